@@ -0,0 +1,76 @@
+package cdutils.dao;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cdutils.domain.DiscInfo;
+import cdutils.domain.TOC;
+import cdutils.domain.TOCEntry;
+import cdutils.exception.DiscReadException;
+
+/**
+ * Measures the disc id calls, both through {@link DiscId} against the simulated drive and 
+ * calculated in Java from a table of contents by {@link DiscIdCalculator}.
+ * 
+ * @author ollie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DiscIdBenchmark {
+
+	private DiscId discId;
+	private DiscIdCalculator calculator;
+	private TOC toc;
+	
+	@Setup
+	public void setup() throws DiscReadException {
+		SimulatedDriveBackend backend = new SimulatedDriveBackend();
+		discId = backend.createDiscId("/dev/cdrom");
+		calculator = new DiscIdCalculator();
+		CDDAParanoia paranoia = backend.createParanoia();
+		paranoia.open("/dev/cdrom");
+		toc = new TOC();
+		for (int track = 1; track <= paranoia.getTracks(); track++) {
+			TOCEntry entry = new TOCEntry();
+			entry.setId(track);
+			entry.setFirstSector(paranoia.getFirstSector(track));
+			entry.setLastSector(paranoia.getLastSector(track));
+			toc.addEntry(entry);
+		}
+		paranoia.close();
+	}
+	
+	@Benchmark
+	public String getMusicBrainzDiscId() throws DiscReadException {
+		return discId.getMusicBrainzDiscId();
+	}
+	
+	@Benchmark
+	public String getFreeDbId() throws DiscReadException {
+		return discId.getFreeDdId();
+	}
+	
+	@Benchmark
+	public DiscInfo readDiscInfo() throws DiscReadException {
+		return discId.readDiscInfo();
+	}
+	
+	@Benchmark
+	public DiscInfo getDiscInfo() throws DiscReadException {
+		return discId.getDiscInfo(toc);
+	}
+	
+	@Benchmark
+	public DiscInfo calculateDiscInfo() {
+		return calculator.getDiscInfo(toc);
+	}
+}
@@ -0,0 +1,99 @@
+package cdutils.dao;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cdutils.domain.ReadMode;
+import cdutils.exception.DiscReadException;
+
+/**
+ * Measures the cost of reading frames through {@link CDDAParanoia} from the simulated drive, 
+ * one frame at a time as a copy or a view, and in batches into heap and direct buffers.
+ * 
+ * @author ollie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParanoiaReadBenchmark {
+
+	private static final int BATCH_SECTORS = 64;
+	
+	@Param({"FULL", "RAW"})
+	public ReadMode readMode;
+	
+	@Param({"heap", "direct"})
+	public String buffer;
+	
+	private SimulatedDriveBackend backend;
+	private CDDAParanoia paranoia;
+	private ByteBuffer batch;
+	private int position;
+	
+	@Setup(Level.Trial)
+	public void open() throws DiscReadException {
+		backend = new SimulatedDriveBackend();
+		paranoia = backend.createParanoia();
+		paranoia.open("/dev/cdrom");
+		paranoia.setReadMode(readMode);
+		paranoia.seek(0);
+		int size = BATCH_SECTORS*CDDAParanoia.cddaFrameSize;
+		batch = "direct".equals(buffer) ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+	
+	@TearDown(Level.Trial)
+	public void close() {
+		paranoia.close();
+	}
+	
+	@Setup(Level.Iteration)
+	public void rewind() {
+		position = 0;
+		paranoia.seek(0);
+	}
+	
+	/**
+	 * Seeks back to the start of the disc before a read of {@code count} frames would run 
+	 * off the end of it.
+	 */
+	private void advance(int count) {
+		if (position + count > backend.getSectors()) {
+			rewind();
+		}
+		position += count;
+	}
+	
+	@Benchmark
+	public byte[] readNextFrame() throws DiscReadException {
+		advance(1);
+		return paranoia.readNextFrame();
+	}
+	
+	@Benchmark
+	public ByteBuffer readNextFrameView() throws DiscReadException {
+		advance(1);
+		return paranoia.readNextFrameView();
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SECTORS)
+	public void readFrames(Blackhole hole) throws DiscReadException {
+		advance(BATCH_SECTORS);
+		batch.clear();
+		hole.consume(paranoia.readFrames(BATCH_SECTORS, batch));
+	}
+}
@@ -0,0 +1,93 @@
+package cdutils.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import cdutils.dao.SimulatedDriveBackend;
+import cdutils.domain.ReadMode;
+import cdutils.domain.TOC;
+import cdutils.exception.DiscReadException;
+
+/**
+ * Measures {@link CDDA} against the simulated drive: building the table of contents, 
+ * formatting it, and the read throughput of a track's audio input stream.
+ * 
+ * @author ollie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CDDABenchmark {
+
+	private static final String DEVICE = "/dev/cdrom";
+	
+	@Param({"FULL", "RAW"})
+	public ReadMode readMode;
+	
+	@Param({"4096", "65536"})
+	public int readSize;
+	
+	private CDDA cdda;
+	private TOC toc;
+	private byte[] buffer;
+	
+	@Setup
+	public void setup() throws DiscReadException {
+		cdda = new CDDA(DEVICE, new SimulatedDriveBackend());
+		cdda.setReadMode(readMode);
+		// measures the code rather than the adaptive speed callback and speed changes
+		cdda.setSpeed(-1);
+		toc = cdda.getTableOfContents();
+		buffer = new byte[readSize];
+	}
+	
+	@TearDown
+	public void tearDown() {
+		TOCCache.getInstance().clear();
+	}
+	
+	@Benchmark
+	public TOC buildTOC() throws DiscReadException {
+		TOCCache.getInstance().clear();
+		return cdda.getTableOfContents();
+	}
+	
+	@Benchmark
+	public String tocToString() {
+		return toc.toString();
+	}
+	
+	/**
+	 * Reads a whole track through the audio input stream; one operation is one track of 
+	 * {@link SimulatedDriveBackend#DEFAULT_TRACK_SECTORS} sectors. The stream releases the 
+	 * drive before its end is read, so the next operation can open the drive straight away.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long readTrack() throws DiscReadException, IOException {
+		InputStream in = cdda.getTrack(1);
+		long total = 0;
+		try {
+			int read;
+			while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+				total += read;
+			}
+		} finally {
+			in.close();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,105 @@
+package cdutils.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import cdutils.dao.SimulatedDriveBackend;
+import cdutils.domain.TOCEntry;
+import cdutils.exception.DiscReadException;
+
+/**
+ * Measures how the throughput of a {@link RipScheduler} scales with the number of drives.
+ * Each drive is simulated at a fixed top speed, so one operation, ripping {@link #DISCS}
+ * discs, should take half as long each time the drives are doubled while the scheduler keeps
+ * every drive busy.
+ *
+ * @author ollie
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RipSchedulerBenchmark {
+
+	private static final int DISCS = 8;
+	private static final int DRIVE_SPEED = 8;
+
+	@Param({"1", "2", "4", "8"})
+	public int drives;
+
+	private RipScheduler scheduler;
+
+	@Setup
+	public void setup() {
+		List<CDDA> cds = new ArrayList<CDDA>();
+		for (int i = 0; i < drives; i++) {
+			SimulatedDriveBackend backend = new SimulatedDriveBackend();
+			// a short disc, so each rip is bound by the drive's top speed
+			backend.setTracks(2, DRIVE_SPEED*SimulatedDriveBackend.SECTORS_PER_SECOND/4);
+			backend.setMaxSpeed(DRIVE_SPEED);
+			CDDA cdda = new CDDA("/dev/simulated"+i, backend);
+			cdda.setSpeed(-1);
+			cds.add(cdda);
+		}
+		scheduler = new RipScheduler(cds, DISCS);
+		scheduler.start();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		scheduler.shutdownNow();
+		scheduler.awaitTermination(10, TimeUnit.SECONDS);
+		TOCCache.getInstance().clear();
+	}
+
+	/**
+	 * Rips {@link #DISCS} discs across the drives and waits for all of them.
+	 */
+	@Benchmark
+	public long ripDiscs() throws InterruptedException, DiscReadException {
+		List<RipJob> jobs = new ArrayList<RipJob>();
+		for (int i = 0; i < DISCS; i++) {
+			RipJob job = new RipJob(new DiscardingSink(), null);
+			scheduler.submit(job);
+			jobs.add(job);
+		}
+		long bytes = 0;
+		for (RipJob job : jobs) {
+			job.waitFor();
+			if (job.getError() != null) {
+				throw new DiscReadException(job.getError());
+			}
+			bytes += job.getBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Discards the audio.
+	 */
+	private static class DiscardingSink implements TrackSink {
+
+		@Override
+		public void startTrack(TOCEntry track) {
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) {
+		}
+
+		@Override
+		public void endTrack(TOCEntry track) {
+		}
+	}
+}
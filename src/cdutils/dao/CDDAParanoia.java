@@ -1,9 +1,15 @@
 package cdutils.dao;
 
+import java.nio.ByteBuffer;
+
+import cdutils.domain.ReadMode;
 import cdutils.exception.DiscReadException;
 
+import com.sun.jna.Callback;
 import com.sun.jna.Library;
+import com.sun.jna.Memory;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
 
 /**
@@ -19,26 +25,45 @@ public class CDDAParanoia {
 	private final int maxRetries = 20;
 	private final int PARANOIA_MODE_FULL = 0xff;
 	private final int PARANOIA_MODE_NEVER_SKIP = 0x20;
+	private final int PARANOIA_MODE_OVERLAP = 0x04;
 	private final int MODE = PARANOIA_MODE_FULL^PARANOIA_MODE_NEVER_SKIP;
 	private final int SEEK_SET = 0;
+	private final int PARANOIA_CB_FIXUP_EDGE = 2;
+	private final int PARANOIA_CB_FIXUP_ATOM = 3;
+	private final int PARANOIA_CB_SCRATCH = 4;
+	private final int PARANOIA_CB_REPAIR = 5;
+	private final int PARANOIA_CB_SKIP = 6;
+	private final int PARANOIA_CB_DRIFT = 7;
+	private final int PARANOIA_CB_FIXUP_DROPPED = 10;
+	private final int PARANOIA_CB_FIXUP_DUPED = 11;
+	private final int PARANOIA_CB_READERR = 12;
+	/** The number of sectors read with full paranoia after an error in {@code AUTO} mode. */
+	private final int AUTO_ESCALATION_SECTORS = 750;
 	
 	/**
 	 * Wrapper interface for the native CDDAParanoia library.
 	 */
-	private interface LibCDDAParanoiaAPI extends Library {
+	interface LibCDDAParanoiaAPI extends Library {
 		void paranoia_modeset(Pointer cdpar, int paranoiaMode);
 		Pointer paranoia_init(Pointer cdpar);
 		String paranoia_version();
 		long paranoia_seek(Pointer cdpar,long seek,int mode);
-		Pointer paranoia_read_limited(Pointer cdrom, Pointer callback, int max_retries);
-		Pointer paranoia_read(Pointer cdrom, Pointer callback);
+		Pointer paranoia_read_limited(Pointer cdrom, ParanoiaCallback callback, int max_retries);
+		Pointer paranoia_read(Pointer cdrom, ParanoiaCallback callback);
 		void paranoia_free(Pointer cdpar);
 	}
 	
+	/**
+	 * Callback used by the paranoia library to report each stage of a read.
+	 */
+	interface ParanoiaCallback extends Callback {
+		void callback(NativeLong inpos, int function);
+	}
+	
 	/**
 	 * Wrapper interface for the native CDDA library.
 	 */
-	private interface LibCDDAInterfaceAPI extends Library {
+	interface LibCDDAInterfaceAPI extends Library {
 		String cdda_version();
 		Pointer cdda_identify(String device, int messagedest, String message);
 		Pointer cdda_find_a_cdrom(int messagedest, String message);
@@ -48,7 +73,6 @@ public class CDDAParanoia {
 		long cdda_track_lastsector(Pointer cdrom, int track);
 		String cdda_messages(Pointer cdrom);
 		String cdda_errors(Pointer cdrom);
-		void close();
 		void cdda_verbose_set(Pointer cdrom, int err_action, int mes_action);
 		int cdda_open(Pointer cdrom);
 		int cdda_track_copyp(Pointer cdrom, int track);
@@ -56,6 +80,49 @@ public class CDDAParanoia {
 		int cdda_track_preemp(Pointer cdrom, int track);
 		int cdda_speed_set(Pointer cdrom, int speed);
 		int cdda_track_audiop(Pointer cdrom,int track);
+		long cdda_read(Pointer cdrom, Pointer buffer, long beginsector, long sectors);
+	}
+	
+	/**
+	 * Direct mapping of the native CDDAParanoia library.
+	 */
+	private static class DirectParanoiaAPI implements LibCDDAParanoiaAPI {
+		static {
+			Native.register(DirectParanoiaAPI.class, "cdda_paranoia");
+		}
+		public native void paranoia_modeset(Pointer cdpar, int paranoiaMode);
+		public native Pointer paranoia_init(Pointer cdpar);
+		public native String paranoia_version();
+		public native long paranoia_seek(Pointer cdpar,long seek,int mode);
+		public native Pointer paranoia_read_limited(Pointer cdrom, ParanoiaCallback callback, int max_retries);
+		public native Pointer paranoia_read(Pointer cdrom, ParanoiaCallback callback);
+		public native void paranoia_free(Pointer cdpar);
+	}
+	
+	/**
+	 * Direct mapping of the native CDDA library.
+	 */
+	private static class DirectCDDAInterfaceAPI implements LibCDDAInterfaceAPI {
+		static {
+			Native.register(DirectCDDAInterfaceAPI.class, "cdda_interface");
+		}
+		public native String cdda_version();
+		public native Pointer cdda_identify(String device, int messagedest, String message);
+		public native Pointer cdda_find_a_cdrom(int messagedest, String message);
+		public native int cdda_close(Pointer cdrom);
+		public native long cdda_tracks(Pointer cdrom);
+		public native long cdda_track_firstsector(Pointer cdrom, int track);
+		public native long cdda_track_lastsector(Pointer cdrom, int track);
+		public native String cdda_messages(Pointer cdrom);
+		public native String cdda_errors(Pointer cdrom);
+		public native void cdda_verbose_set(Pointer cdrom, int err_action, int mes_action);
+		public native int cdda_open(Pointer cdrom);
+		public native int cdda_track_copyp(Pointer cdrom, int track);
+		public native int cdda_track_channels(Pointer cdrom, int track);
+		public native int cdda_track_preemp(Pointer cdrom, int track);
+		public native int cdda_speed_set(Pointer cdrom, int speed);
+		public native int cdda_track_audiop(Pointer cdrom,int track);
+		public native long cdda_read(Pointer cdrom, Pointer buffer, long beginsector, long sectors);
 	}
 	
 	private final LibCDDAParanoiaAPI libpara;
@@ -63,10 +130,70 @@ public class CDDAParanoia {
 	private Pointer cdpar;
 	private Pointer cdrom;
 	private int verbose = 0;
+	private long position;
+	private boolean paranoiaSynced = true;
+	private Memory rawBuffer;
+	private final byte[] frame = new byte[cddaFrameSize];
+	private ReadMode readMode = ReadMode.FULL;
+	private long escalatedUntil = -1;
+	private boolean statisticsEnabled;
+	private volatile long readErrors;
+	private volatile long skips;
+	private volatile long repairs;
+	private volatile long escalations;
+	private final LatencyHistogram readLatency = new LatencyHistogram();
+	
+	/**
+	 * Counts the errors and repairs reported by the paranoia library. Only passed to the library
+	 * when statistics are needed, since every callback is a call back across the JNA boundary.
+	 */
+	private final ParanoiaCallback statistics = new ParanoiaCallback() {
+		@Override
+		public void callback(NativeLong inpos, int function) {
+			switch (function) {
+			  case PARANOIA_CB_READERR:
+				  readErrors++;
+				  break;
+			  case PARANOIA_CB_SKIP:
+				  skips++;
+				  break;
+			  case PARANOIA_CB_FIXUP_EDGE:case PARANOIA_CB_FIXUP_ATOM:case PARANOIA_CB_SCRATCH:
+			  case PARANOIA_CB_REPAIR:case PARANOIA_CB_DRIFT:case PARANOIA_CB_FIXUP_DROPPED:case PARANOIA_CB_FIXUP_DUPED:
+				  repairs++;
+				  break;
+			  default:
+				  break;
+			}
+		}
+	};
 	
 	public CDDAParanoia() {
-		libpara = (LibCDDAParanoiaAPI) Native.loadLibrary("cdda_paranoia", LibCDDAParanoiaAPI.class);
-		libcdda = (LibCDDAInterfaceAPI) Native.loadLibrary("cdda_interface", LibCDDAInterfaceAPI.class);
+		LibCDDAParanoiaAPI para = null;
+		LibCDDAInterfaceAPI cdda = null;
+		if (NativeMapping.isDirect()) {
+			try {
+				para = new DirectParanoiaAPI();
+				cdda = new DirectCDDAInterfaceAPI();
+			} catch (LinkageError e) {
+				para = null;
+				cdda = null;
+			}
+		}
+		if (para == null) {
+			para = (LibCDDAParanoiaAPI) Native.loadLibrary("cdda_paranoia", LibCDDAParanoiaAPI.class);
+			cdda = (LibCDDAInterfaceAPI) Native.loadLibrary("cdda_interface", LibCDDAInterfaceAPI.class);
+		}
+		libpara = para;
+		libcdda = cdda;
+	}
+	
+	/**
+	 * Constructs a wrapper around the given library implementations, used to run against a 
+	 * simulated drive.
+	 */
+	CDDAParanoia(LibCDDAParanoiaAPI libpara, LibCDDAInterfaceAPI libcdda) {
+		this.libpara = libpara;
+		this.libcdda = libcdda;
 	}
 		
 	/**
@@ -121,7 +248,7 @@ public class CDDAParanoia {
 			if (cdpar == null) {
 				throw new DiscReadException("Unable to initialise the cd paranoia library.");
 			} else {
-				libpara.paranoia_modeset(cdpar, MODE);
+				libpara.paranoia_modeset(cdpar, paranoiaMode());
 			}
 		} 
 	}
@@ -189,6 +316,8 @@ public class CDDAParanoia {
 	 * @return
 	 */
 	public long seek(long seekSector) {
+		position = seekSector;
+		paranoiaSynced = true;
 		return libpara.paranoia_seek(cdpar, seekSector, SEEK_SET);
 	}
 	
@@ -197,13 +326,263 @@ public class CDDAParanoia {
 	 * @return The next frame of data.
 	 */
 	public byte[] readNextFrame() throws DiscReadException {
-		Pointer data = libpara.paranoia_read_limited(cdpar, null, maxRetries);
+		syncParanoia();
+		Pointer data = readParanoia(callback());
 		if (data == null) {
 			throw new DiscReadException("Cannot read disc");
 		}
+		position++;
 		return data.getByteArray(0, cddaFrameSize);
 	}
 	
+	/**
+	 * Reads the next frame from the current read position without copying it out of native 
+	 * memory. The returned buffer is a view onto the paranoia library's internal buffer and is 
+	 * only valid until the next read, seek or close.
+	 * @return A view of the next frame of data.
+	 */
+	public ByteBuffer readNextFrameView() throws DiscReadException {
+		syncParanoia();
+		Pointer data = readParanoia(callback());
+		if (data == null) {
+			throw new DiscReadException("Cannot read disc");
+		}
+		position++;
+		return data.getByteBuffer(0, cddaFrameSize);
+	}
+	
+	/**
+	 * Reads up to {@code count} frames from the current read position into the given buffer,
+	 * starting at the buffer's position, using the current read mode. The number of frames read 
+	 * is limited by the space remaining in the buffer. The buffer's position is advanced past 
+	 * the data read.
+	 * @param count - the maximum number of frames to read.
+	 * @param dst - the buffer to read the frames into.
+	 * @return The number of frames read.
+	 * @throws DiscReadException - if no frames could be read.
+	 */
+	public int readFrames(int count, ByteBuffer dst) throws DiscReadException {
+		switch (readMode) {
+		  case RAW:
+			  return readRawFrames(count, dst);
+		  case AUTO:
+			  return readAutoFrames(count, dst);
+		  default:
+			  return readParanoiaFrames(count, dst);
+		}
+	}
+	
+	/**
+	 * Reads frames without verification, escalating to full paranoia for a window of sectors
+	 * whenever a raw read fails or the paranoia library reports errors within the window.
+	 */
+	private int readAutoFrames(int count, ByteBuffer dst) throws DiscReadException {
+		if (position >= escalatedUntil) {
+			try {
+				return readRawFrames(count, dst);
+			} catch (DiscReadException e) {
+				readErrors++;
+				escalations++;
+				escalatedUntil = position + AUTO_ESCALATION_SECTORS;
+			}
+		}
+		long errors = readErrors + skips + repairs;
+		int read = readParanoiaFrames((int) Math.min(count, escalatedUntil - position), dst);
+		if (readErrors + skips + repairs != errors) {
+			escalatedUntil = position + AUTO_ESCALATION_SECTORS;
+		}
+		return read;
+	}
+	
+	/**
+	 * Reads up to {@code count} paranoia verified frames from the current read position into
+	 * the given buffer, starting at the buffer's position. The number of frames read is limited
+	 * by the space remaining in the buffer. The buffer's position is advanced past the data read.
+	 * Frames for a direct buffer are copied through a heap array, as JNA cannot copy from the
+	 * library's frame to the buffer natively.
+	 * @param count - the maximum number of frames to read.
+	 * @param dst - the buffer to read the frames into.
+	 * @return The number of frames read.
+	 * @throws DiscReadException - if no frames could be read.
+	 */
+	public int readParanoiaFrames(int count, ByteBuffer dst) throws DiscReadException {
+		count = Math.min(count, dst.remaining()/cddaFrameSize);
+		syncParanoia();
+		ParanoiaCallback callback = callback();
+		int read = 0;
+		while (read < count) {
+			Pointer data = readParanoia(callback);
+			if (data == null) {
+				if (read == 0) {
+					throw new DiscReadException("Cannot read disc");
+				}
+				break;
+			}
+			if (dst.hasArray()) {
+				data.read(0, dst.array(), dst.arrayOffset()+dst.position(), cddaFrameSize);
+				dst.position(dst.position()+cddaFrameSize);
+			} else {
+				// through a reused array, a view of the native frame would be allocated per frame
+				data.read(0, frame, 0, cddaFrameSize);
+				dst.put(frame);
+			}
+			position++;
+			read++;
+		}
+		return read;
+	}
+	
+	/**
+	 * Reads up to {@code count} frames from the current read position into the given buffer
+	 * using a single unverified read from the drive, bypassing the paranoia library. The number
+	 * of frames read is limited by the space remaining in the buffer. The buffer's position is 
+	 * advanced past the data read.
+	 * @param count - the maximum number of frames to read.
+	 * @param dst - the buffer to read the frames into.
+	 * @return The number of frames read.
+	 * @throws DiscReadException - if no frames could be read.
+	 */
+	public int readRawFrames(int count, ByteBuffer dst) throws DiscReadException {
+		count = Math.min(count, dst.remaining()/cddaFrameSize);
+		if (count == 0) {
+			return 0;
+		}
+		int bytes = count*cddaFrameSize;
+		Pointer target;
+		if (dst.isDirect()) {
+			target = Native.getDirectBufferPointer(dst).share(dst.position());
+		} else {
+			if (rawBuffer == null || rawBuffer.size() < bytes) {
+				rawBuffer = new Memory(bytes);
+			}
+			target = rawBuffer;
+		}
+		long start = statisticsEnabled ? System.nanoTime() : 0;
+		int read = (int) libcdda.cdda_read(cdrom, target, position, count);
+		if (statisticsEnabled) {
+			readLatency.record(System.nanoTime() - start);
+		}
+		if (read <= 0) {
+			throw new DiscReadException("Cannot read disc, error ["+read+"] at sector ["+position+"]");
+		}
+		int length = read*cddaFrameSize;
+		if (dst.isDirect()) {
+			dst.position(dst.position()+length);
+		} else {
+			rawBuffer.read(0, dst.array(), dst.arrayOffset()+dst.position(), length);
+			dst.position(dst.position()+length);
+		}
+		position += read;
+		paranoiaSynced = false;
+		return read;
+	}
+	
+	/**
+	 * Reads the next frame through the paranoia library, timing the call if statistics are 
+	 * enabled.
+	 */
+	private Pointer readParanoia(ParanoiaCallback callback) {
+		if (!statisticsEnabled) {
+			return libpara.paranoia_read_limited(cdpar, callback, maxRetries);
+		}
+		long start = System.nanoTime();
+		Pointer data = libpara.paranoia_read_limited(cdpar, callback, maxRetries);
+		readLatency.record(System.nanoTime() - start);
+		return data;
+	}
+	
+	/**
+	 * Seeks the paranoia library to the current read position if raw reads have moved it on.
+	 */
+	private void syncParanoia() {
+		if (!paranoiaSynced) {
+			libpara.paranoia_seek(cdpar, position, SEEK_SET);
+			paranoiaSynced = true;
+		}
+	}
+	
+	/**
+	 * Gets the callback to pass to the paranoia library, null if statistics are not needed.
+	 */
+	private ParanoiaCallback callback() {
+		return statisticsEnabled || readMode == ReadMode.AUTO ? statistics : null;
+	}
+	
+	/**
+	 * Gets the paranoia library mode for the current read mode.
+	 */
+	private int paranoiaMode() {
+		return readMode == ReadMode.VERIFY ? PARANOIA_MODE_OVERLAP : MODE;
+	}
+	
+	/**
+	 * Sets the strategy used by {@link #readFrames(int, ByteBuffer)} to read from the disc.
+	 * @param readMode - the read mode.
+	 */
+	public void setReadMode(ReadMode readMode) {
+		this.readMode = readMode;
+		escalatedUntil = -1;
+		if (cdpar != null) {
+			libpara.paranoia_modeset(cdpar, paranoiaMode());
+		}
+	}
+	
+	public ReadMode getReadMode() {
+		return readMode;
+	}
+	
+	/**
+	 * Whether to count the errors and repairs reported by the paranoia library, and time each
+	 * read from the native libraries. Errors and repairs are always counted in {@code AUTO} mode.
+	 * @param statisticsEnabled - true to collect statistics.
+	 */
+	public void setStatisticsEnabled(boolean statisticsEnabled) {
+		this.statisticsEnabled = statisticsEnabled;
+	}
+	
+	/**
+	 * Gets the number of read errors reported by the drive.
+	 * @return The number of read errors.
+	 */
+	public long getReadErrors() {
+		return readErrors;
+	}
+	
+	/**
+	 * Gets the number of times the paranoia library gave up on a sector and skipped it.
+	 * @return The number of skips.
+	 */
+	public long getSkips() {
+		return skips;
+	}
+	
+	/**
+	 * Gets the number of jitter corrections, scratch repairs and other fixes made by the 
+	 * paranoia library.
+	 * @return The number of repairs.
+	 */
+	public long getRepairs() {
+		return repairs;
+	}
+	
+	/**
+	 * Gets the number of times {@code AUTO} mode switched to full paranoia.
+	 * @return The number of escalations.
+	 */
+	public long getEscalations() {
+		return escalations;
+	}
+	
+	/**
+	 * Gets the latencies of the calls made to the native libraries to read from the disc, one
+	 * per frame read through the paranoia library and one per raw read. Only recorded while
+	 * statistics are enabled.
+	 * @return The read latencies.
+	 */
+	public LatencyHistogram getReadLatency() {
+		return readLatency;
+	}
+	
 	/**
 	 * Determines whether copy is permitted on the given track.
 	 * @param track - the id of the track to check.
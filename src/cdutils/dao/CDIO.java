@@ -1,9 +1,15 @@
 package cdutils.dao;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cdutils.domain.DriveStatus;
 
 import com.sun.jna.Library;
 import com.sun.jna.Native;
+import com.sun.jna.Pointer;
 
 /**
  * <p>
@@ -14,14 +20,64 @@ import com.sun.jna.Native;
  */
 public class CDIO {
 
-	private interface LibCDIOAPI extends Library {
+	private static final int DRIVER_UNKNOWN = 0;
+	private static final int TRAY_OPEN = 1;
+	private static final int INVALID_TRACK = 0xff;
+	
+	/**
+	 * The number of media changes seen on each device. The drive only reports whether the
+	 * media has changed since it was last asked, so changes are counted here to allow any 
+	 * number of callers to detect them.
+	 */
+	private static final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+	
+	interface LibCDIOAPI extends Library {
 		int	cdio_eject_media_drive(String device);
+		Pointer cdio_open(String device, int driver);
+		void cdio_destroy(Pointer cdio);
+		int cdio_get_media_changed(Pointer cdio);
+		int mmc_get_tray_status(Pointer cdio);
+		byte cdio_get_num_tracks(Pointer cdio);
+	}
+	
+	/**
+	 * Direct mapping of the native cdio library.
+	 */
+	private static class DirectCDIOAPI implements LibCDIOAPI {
+		static {
+			Native.register(DirectCDIOAPI.class, "cdio");
+		}
+		public native int cdio_eject_media_drive(String device);
+		public native Pointer cdio_open(String device, int driver);
+		public native void cdio_destroy(Pointer cdio);
+		public native int cdio_get_media_changed(Pointer cdio);
+		public native int mmc_get_tray_status(Pointer cdio);
+		public native byte cdio_get_num_tracks(Pointer cdio);
 	}
 	
 	private final LibCDIOAPI cdio;
 	
 	public CDIO() {
-		cdio = (LibCDIOAPI) Native.loadLibrary("cdio", LibCDIOAPI.class);
+		LibCDIOAPI lib = null;
+		if (NativeMapping.isDirect()) {
+			try {
+				lib = new DirectCDIOAPI();
+			} catch (LinkageError e) {
+				lib = null;
+			}
+		}
+		if (lib == null) {
+			lib = (LibCDIOAPI) Native.loadLibrary("cdio", LibCDIOAPI.class);
+		}
+		cdio = lib;
+	}
+	
+	/**
+	 * Constructs a wrapper around the given library implementation, used to run against a 
+	 * simulated drive.
+	 */
+	CDIO(LibCDIOAPI cdio) {
+		this.cdio = cdio;
 	}
 		
 	/**
@@ -46,4 +102,61 @@ public class CDIO {
 		return result;
 	}
 	
+	/**
+	 * Determines whether the media in the given device has changed since the last time 
+	 * this was checked. This only queries the drive and does not read the disc.
+	 * @param device - the device locator.
+	 * @return True if the media has changed or the drive could not be queried.
+	 */
+	public boolean isMediaChanged(String device) {
+		Pointer p = cdio.cdio_open(device, DRIVER_UNKNOWN);
+		if (p == null) {
+			return true;
+		}
+		try {
+			return cdio.cdio_get_media_changed(p) != 0;
+		} finally {
+			cdio.cdio_destroy(p);
+		}
+	}
+	
+	/**
+	 * Gets a count of the media changes seen on the given device. Unlike {@link #isMediaChanged(String)},
+	 * any number of callers can detect a change by comparing the count with the one they last saw.
+	 * @param device - the device locator.
+	 * @return The media change count for the device.
+	 */
+	public long getMediaGeneration(String device) {
+		AtomicLong generation = generations.get(device);
+		if (generation == null) {
+			generations.putIfAbsent(device, new AtomicLong());
+			generation = generations.get(device);
+		}
+		if (isMediaChanged(device)) {
+			return generation.incrementAndGet();
+		}
+		return generation.get();
+	}
+	
+	/**
+	 * Queries the state of the given device without reading the disc.
+	 * @param device - the device locator.
+	 * @return The drive status.
+	 */
+	public DriveStatus getDriveStatus(String device) {
+		Pointer p = cdio.cdio_open(device, DRIVER_UNKNOWN);
+		if (p == null) {
+			return DriveStatus.UNKNOWN;
+		}
+		try {
+			if (cdio.mmc_get_tray_status(p) == TRAY_OPEN) {
+				return DriveStatus.TRAY_OPEN;
+			}
+			int tracks = cdio.cdio_get_num_tracks(p) & 0xff;
+			return tracks == 0 || tracks == INVALID_TRACK ? DriveStatus.NO_DISC : DriveStatus.DISC_PRESENT;
+		} finally {
+			cdio.cdio_destroy(p);
+		}
+	}
+	
 }
@@ -1,5 +1,10 @@
 package cdutils.dao;
 
+import java.util.List;
+
+import cdutils.domain.DiscInfo;
+import cdutils.domain.TOC;
+import cdutils.domain.TOCEntry;
 import cdutils.exception.DiscReadException;
 
 import com.sun.jna.Library;
@@ -18,7 +23,7 @@ public class DiscId {
 	/**
 	 * An interface to the native discid API
 	 */
-	private interface LibdiscIdAPI extends Library {
+	interface LibdiscIdAPI extends Library {
 				
 		/**
 		 * Return a handle for a new DiscId object.
@@ -193,6 +198,30 @@ public class DiscId {
 		int discid_get_track_length(Pointer d, int track_num);
 	}
 	
+	/**
+	 * Direct mapping of the native discid API.
+	 */
+	private static class DirectdiscIdAPI implements LibdiscIdAPI {
+		static {
+			Native.register(DirectdiscIdAPI.class, "discid");
+		}
+		public native Pointer discid_new();
+		public native void discid_free(Pointer disc);
+		public native int discid_read(Pointer disc, String device);
+		public native int discid_put(Pointer d, int first, int last, int[] offsets);
+		public native String discid_get_error_msg(Pointer d);
+		public native String discid_get_id(Pointer d);
+		public native String discid_get_freedb_id(Pointer disc);
+		public native String discid_get_submission_url(Pointer d);
+		public native String discid_get_webservice_url(Pointer d);
+		public native String discid_get_default_device();
+		public native int discid_get_first_track_num(Pointer d);
+		public native int discid_get_last_track_num(Pointer d);
+		public native int discid_get_sectors(Pointer d);
+		public native int discid_get_track_offset(Pointer d, int track_num);
+		public native int discid_get_track_length(Pointer d, int track_num);
+	}
+	
 	private LibdiscIdAPI lib;
 	private String device;
 	
@@ -201,7 +230,25 @@ public class DiscId {
 	 * @param device - the locator of the CDROM drive.
 	 */
 	public DiscId(String device) {
-		lib = (LibdiscIdAPI) Native.loadLibrary("discid", LibdiscIdAPI.class);
+		if (NativeMapping.isDirect()) {
+			try {
+				lib = new DirectdiscIdAPI();
+			} catch (LinkageError e) {
+				lib = null;
+			}
+		}
+		if (lib == null) {
+			lib = (LibdiscIdAPI) Native.loadLibrary("discid", LibdiscIdAPI.class);
+		}
+		this.device = device;
+	}
+	
+	/**
+	 * Constructs a wrapper around the given library implementation, used to run against a 
+	 * simulated drive.
+	 */
+	DiscId(String device, LibdiscIdAPI lib) {
+		this.lib = lib;
 		this.device = device;
 	}
 	
@@ -255,4 +302,69 @@ public class DiscId {
 		lib.discid_free(disc);
 		return url;
 	}
+	
+	/**
+	 * Reads the disc once and gets all of its identifiers and track offsets.
+	 * @return The disc information.
+	 * @throws DiscReadException - if there is no disc in the drive of the disc cannot be read.
+	 */
+	public DiscInfo readDiscInfo() throws DiscReadException {
+		Pointer disc = readDisc();
+		try {
+			return toDiscInfo(disc);
+		} finally {
+			lib.discid_free(disc);
+		}
+	}
+	
+	/**
+	 * Calculates the identifiers of a disc from a table of contents that has already been read,
+	 * without accessing the drive.
+	 * @param toc - the table of contents of the disc.
+	 * @return The disc information.
+	 * @throws DiscReadException - if the table of contents is not valid.
+	 */
+	public DiscInfo getDiscInfo(TOC toc) throws DiscReadException {
+		List<TOCEntry> entries = toc.entries();
+		if (entries.isEmpty()) {
+			throw new DiscReadException("Table of contents has no tracks");
+		}
+		int first = entries.get(0).getId();
+		int last = entries.get(entries.size()-1).getId();
+		int[] offsets = new int[DiscIdCalculator.MAX_TRACKS];
+		DiscIdCalculator.fillOffsets(toc, offsets);
+		Pointer disc = lib.discid_new();
+		try {
+			if (lib.discid_put(disc, first, last, offsets) == 0) {
+				throw new DiscReadException(lib.discid_get_error_msg(disc));
+			}
+			return toDiscInfo(disc);
+		} finally {
+			lib.discid_free(disc);
+		}
+	}
+	
+	/**
+	 * Copies the identifiers and track offsets out of a discid object.
+	 */
+	private DiscInfo toDiscInfo(Pointer disc) {
+		DiscInfo info = new DiscInfo();
+		info.setMusicBrainzDiscId(lib.discid_get_id(disc));
+		info.setFreeDbId(lib.discid_get_freedb_id(disc));
+		info.setSubmissionURL(lib.discid_get_submission_url(disc));
+		info.setWebServiceURL(lib.discid_get_webservice_url(disc));
+		int first = lib.discid_get_first_track_num(disc);
+		int last = lib.discid_get_last_track_num(disc);
+		info.setFirstTrack(first);
+		info.setLastTrack(last);
+		info.setSectors(lib.discid_get_sectors(disc));
+		int[] offsets = new int[last - first + 1];
+		int[] lengths = new int[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = lib.discid_get_track_offset(disc, first + i);
+			lengths[i] = lib.discid_get_track_length(disc, first + i);
+		}
+		info.setTracks(offsets, lengths);
+		return info;
+	}
 }
@@ -0,0 +1,185 @@
+package cdutils.dao;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import cdutils.domain.DiscInfo;
+import cdutils.domain.TOC;
+import cdutils.domain.TOCEntry;
+
+/**
+ * <p>
+ * A pure java implementation of the MusicBrainz and FreeDB disc id calculations performed by
+ * the discid library. No native library or drive is needed, so ids can be calculated for 
+ * tables of contents taken from logs, cue sheets or disc images.
+ * <p>
+ * The calculator reuses its working buffers between calls so that very large numbers of ids 
+ * can be calculated cheaply, as a result instances are not thread safe.
+ * 
+ * @author ollie
+ *
+ */
+public class DiscIdCalculator {
+
+	public static final int MAX_TRACKS = 100;
+	public static final int LEAD_IN = 150;
+	private static final int SECTORS_PER_SECOND = 75;
+	private static final int SHA1_LENGTH = 20;
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789._".toCharArray();
+	
+	private final MessageDigest sha1;
+	private final byte[] text = new byte[4 + 8*MAX_TRACKS];
+	private final byte[] digest = new byte[SHA1_LENGTH];
+	private final char[] id = new char[28];
+	private final int[] offsets = new int[MAX_TRACKS];
+	
+	public DiscIdCalculator() {
+		try {
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Fills the given array with the track offsets of the table of contents in the layout used
+	 * by the discid library. Element 0 holds the lead-out, element {@code n} holds the offset of
+	 * track {@code n}, all offsets include the 150 sector lead-in.
+	 * @param toc - the table of contents.
+	 * @param offsets - an array of 100 elements to fill.
+	 */
+	public static void fillOffsets(TOC toc, int[] offsets) {
+		List<TOCEntry> entries = toc.entries();
+		for (int i = 0; i < MAX_TRACKS; i++) {
+			offsets[i] = 0;
+		}
+		offsets[0] = entries.get(entries.size()-1).getLastSector() + 1 + LEAD_IN;
+		for (TOCEntry ent : entries) {
+			offsets[ent.getId()] = ent.getFirstSector() + LEAD_IN;
+		}
+	}
+	
+	/**
+	 * Calculates the MusicBrainz disc id for the given table of contents.
+	 * @param toc - the table of contents.
+	 * @return The MusicBrainz disc id.
+	 */
+	public String getMusicBrainzDiscId(TOC toc) {
+		fillOffsets(toc, offsets);
+		return getMusicBrainzDiscId(firstTrack(toc), lastTrack(toc), offsets);
+	}
+	
+	/**
+	 * Calculates the MusicBrainz disc id from track offsets in the layout used by the discid library.
+	 * @param first - the number of the first track.
+	 * @param last - the number of the last track.
+	 * @param offsets - the lead-out followed by the track offsets, see {@link #fillOffsets(TOC, int[])}.
+	 * @return The MusicBrainz disc id.
+	 */
+	public String getMusicBrainzDiscId(int first, int last, int[] offsets) {
+		int p = hex(first, 2, 0);
+		p = hex(last, 2, p);
+		for (int i = 0; i < MAX_TRACKS; i++) {
+			p = hex(offsets[i], 8, p);
+		}
+		sha1.reset();
+		sha1.update(text, 0, p);
+		try {
+			sha1.digest(digest, 0, SHA1_LENGTH);
+		} catch (DigestException e) {
+			throw new IllegalStateException(e);
+		}
+		int c = 0;
+		for (int i = 0; i < 18; i += 3) {
+			int n = (digest[i] & 0xff) << 16 | (digest[i+1] & 0xff) << 8 | (digest[i+2] & 0xff);
+			id[c++] = BASE64[n >>> 18];
+			id[c++] = BASE64[(n >>> 12) & 0x3f];
+			id[c++] = BASE64[(n >>> 6) & 0x3f];
+			id[c++] = BASE64[n & 0x3f];
+		}
+		int n = (digest[18] & 0xff) << 16 | (digest[19] & 0xff) << 8;
+		id[c++] = BASE64[n >>> 18];
+		id[c++] = BASE64[(n >>> 12) & 0x3f];
+		id[c++] = BASE64[(n >>> 6) & 0x3f];
+		id[c] = '-';
+		return new String(id);
+	}
+	
+	/**
+	 * Calculates the FreeDB disc id for the given table of contents.
+	 * @param toc - the table of contents.
+	 * @return The FreeDB disc id.
+	 */
+	public String getFreeDbId(TOC toc) {
+		fillOffsets(toc, offsets);
+		return getFreeDbId(lastTrack(toc), offsets);
+	}
+	
+	/**
+	 * Calculates the FreeDB disc id from track offsets in the layout used by the discid library.
+	 * @param last - the number of the last track.
+	 * @param offsets - the lead-out followed by the track offsets, see {@link #fillOffsets(TOC, int[])}.
+	 * @return The FreeDB disc id.
+	 */
+	public String getFreeDbId(int last, int[] offsets) {
+		int n = 0;
+		for (int i = 1; i <= last; i++) {
+			for (int secs = offsets[i]/SECTORS_PER_SECOND; secs > 0; secs /= 10) {
+				n += secs % 10;
+			}
+		}
+		int t = offsets[0]/SECTORS_PER_SECOND - offsets[1]/SECTORS_PER_SECOND;
+		int freeDbId = (n % 0xff) << 24 | t << 8 | last;
+		char[] chars = new char[8];
+		for (int i = 7; i >= 0; i--) {
+			chars[i] = Character.forDigit(freeDbId & 0xf, 16);
+			freeDbId >>>= 4;
+		}
+		return new String(chars);
+	}
+	
+	/**
+	 * Calculates the disc information for the given table of contents. The MusicBrainz URLs
+	 * are only available from the discid library and are not set.
+	 * @param toc - the table of contents.
+	 * @return The disc information.
+	 */
+	public DiscInfo getDiscInfo(TOC toc) {
+		int first = firstTrack(toc);
+		int last = lastTrack(toc);
+		DiscInfo info = new DiscInfo();
+		info.setMusicBrainzDiscId(getMusicBrainzDiscId(toc));
+		info.setFreeDbId(getFreeDbId(last, offsets));
+		info.setFirstTrack(first);
+		info.setLastTrack(last);
+		info.setSectors(offsets[0]);
+		int[] trackOffsets = new int[last - first + 1];
+		int[] trackLengths = new int[trackOffsets.length];
+		for (int i = 0; i < trackOffsets.length; i++) {
+			trackOffsets[i] = offsets[first + i];
+			int next = first + i == last ? offsets[0] : offsets[first + i + 1];
+			trackLengths[i] = next - trackOffsets[i];
+		}
+		info.setTracks(trackOffsets, trackLengths);
+		return info;
+	}
+	
+	private int hex(int value, int digits, int p) {
+		for (int i = digits - 1; i >= 0; i--) {
+			text[p + i] = HEX[value & 0xf];
+			value >>>= 4;
+		}
+		return p + digits;
+	}
+	
+	private static int firstTrack(TOC toc) {
+		return toc.entries().get(0).getId();
+	}
+	
+	private static int lastTrack(TOC toc) {
+		return toc.entries().get(toc.size()-1).getId();
+	}
+}
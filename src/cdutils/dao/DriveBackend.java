@@ -0,0 +1,32 @@
+package cdutils.dao;
+
+/**
+ * <p>
+ * Provides the low level wrappers used to access a CDROM drive. Everything above the wrappers
+ * goes through a backend, so the same code can run against the native libraries and a real 
+ * drive, or against a {@link SimulatedDriveBackend}.
+ * 
+ * @author ollie
+ *
+ */
+public interface DriveBackend {
+
+	/**
+	 * Creates a wrapper for reading audio from the drive.
+	 * @return A new paranoia wrapper.
+	 */
+	public CDDAParanoia createParanoia();
+	
+	/**
+	 * Creates a wrapper for reading the disc ids of the disc in the given drive.
+	 * @param device - the CDROM drive locator.
+	 * @return A new disc id wrapper.
+	 */
+	public DiscId createDiscId(String device);
+	
+	/**
+	 * Creates a wrapper for querying and controlling the drive.
+	 * @return A new cdio wrapper.
+	 */
+	public CDIO createCDIO();
+}
@@ -0,0 +1,102 @@
+package cdutils.dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A histogram of call latencies that can be recorded from one thread and read from another
+ * without locking. Latencies are counted in buckets a quarter of a power of two wide, so
+ * percentiles are accurate to within about 25% over the whole range of a {@code long}.
+ *
+ * @author ollie
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = SUB_BUCKETS*63;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a latency.
+	 * @param nanos - the latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+			// retry against the new maximum
+		}
+	}
+
+	/**
+	 * Gets the number of latencies recorded.
+	 * @return The number of latencies.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the largest latency recorded.
+	 * @return The largest latency in nanoseconds, 0 if nothing has been recorded.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the latency that the given fraction of latencies are at or below.
+	 * @param fraction - the fraction of latencies, from 0 to 1, such as 0.99 for the 99th percentile.
+	 * @return The upper bound of the bucket holding the percentile in nanoseconds, 0 if nothing
+	 * has been recorded.
+	 */
+	public long getPercentile(double fraction) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(total*fraction));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Removes all recorded latencies.
+	 */
+	public void clear() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		max.set(0);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		return SUB_BUCKETS*(exponent-1) + (int) ((nanos >>> (exponent-2)) & (SUB_BUCKETS-1));
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket/SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket%SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
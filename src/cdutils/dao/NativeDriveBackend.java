@@ -0,0 +1,40 @@
+package cdutils.dao;
+
+/**
+ * <p>
+ * A {@link DriveBackend} that accesses real drives through the native cdda_paranoia, 
+ * cdda_interface, discid and cdio libraries.
+ * 
+ * @author ollie
+ *
+ */
+public final class NativeDriveBackend implements DriveBackend {
+
+	private static final NativeDriveBackend instance = new NativeDriveBackend();
+	
+	private NativeDriveBackend() {
+	}
+	
+	/**
+	 * Gets the native backend.
+	 * @return The native backend.
+	 */
+	public static NativeDriveBackend getInstance() {
+		return instance;
+	}
+	
+	@Override
+	public CDDAParanoia createParanoia() {
+		return new CDDAParanoia();
+	}
+	
+	@Override
+	public DiscId createDiscId(String device) {
+		return new DiscId(device);
+	}
+	
+	@Override
+	public CDIO createCDIO() {
+		return new CDIO();
+	}
+}
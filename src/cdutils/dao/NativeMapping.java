@@ -0,0 +1,28 @@
+package cdutils.dao;
+
+/**
+ * <p>
+ * Determines how the native library wrappers bind to their libraries. By default the 
+ * wrappers use JNA direct mapping, where native methods are registered once against the
+ * library and called without going through a reflective proxy. Setting the system property
+ * {@code cdutils.jna.direct} to {@code false} selects JNA interface mapping instead. Interface
+ * mapping is also used as a fallback when a library cannot be directly mapped.
+ * 
+ * @author ollie
+ *
+ */
+final class NativeMapping {
+
+	public static final String DIRECT_PROPERTY = "cdutils.jna.direct";
+	
+	private NativeMapping() {
+	}
+	
+	/**
+	 * Determines whether direct mapping should be attempted.
+	 * @return True if the native wrappers should use direct mapping.
+	 */
+	static boolean isDirect() {
+		return !"false".equalsIgnoreCase(System.getProperty(DIRECT_PROPERTY));
+	}
+}
@@ -0,0 +1,636 @@
+package cdutils.dao;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * <p>
+ * A {@link DriveBackend} that simulates a drive holding an audio disc, so the rip path can be
+ * run, load tested and tuned without a drive or the native libraries. The simulated disc is
+ * filled with a repeating second of audio. By default the drive reads as fast as it is asked
+ * to and never fails. Its throughput, seek latency and spin-up time can be configured, as can
+ * read errors and jitter, which are injected at random from a seeded generator so runs are
+ * repeatable.
+ * <p>
+ * The timings model a single drive shared by all the wrappers created by the backend, and
+ * should be configured before the wrappers are used. Ejecting the drive simulates the same
+ * disc being reinserted, which reports a media change and spins the disc up again on the
+ * next open.
+ *
+ * @author ollie
+ *
+ */
+public class SimulatedDriveBackend implements DriveBackend {
+
+	/** The sectors read per second at 1x speed. */
+	public static final int SECTORS_PER_SECOND = 75;
+	public static final int DEFAULT_TRACKS = 12;
+	public static final int DEFAULT_TRACK_SECTORS = 20000;
+	private static final int PATTERN_SECTORS = SECTORS_PER_SECOND;
+	/** The largest shift of a jittered raw read, in samples. */
+	private static final int MAX_JITTER_SAMPLES = 32;
+	private static final long CATCH_UP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final int PARANOIA_CB_FIXUP_EDGE = 2;
+	private static final int PARANOIA_CB_SKIP = 6;
+	private static final int PARANOIA_CB_READERR = 12;
+	private static final byte[] PATTERN = new byte[PATTERN_SECTORS*CDDAParanoia.cddaFrameSize];
+
+	static {
+		for (int i = 0; i < PATTERN.length; i += 4) {
+			int left = (int) (8000*Math.sin(i*0.0007));
+			int right = (int) (6000*Math.sin(i*0.0011));
+			PATTERN[i] = (byte) left;
+			PATTERN[i+1] = (byte) (left >> 8);
+			PATTERN[i+2] = (byte) right;
+			PATTERN[i+3] = (byte) (right >> 8);
+		}
+	}
+
+	private final Drive drive = new Drive();
+	private final Memory pattern = new Memory(PATTERN.length);
+	private final Pointer[] patternSectors = new Pointer[PATTERN_SECTORS];
+	private int tracks = DEFAULT_TRACKS;
+	private int trackSectors = DEFAULT_TRACK_SECTORS;
+	private int firstTrackSector;
+	private int maxSpeed;
+	private long seekNanos;
+	private long spinUpNanos;
+	private double readErrorRate;
+	private double jitterRate;
+	private int errorFreeSpeed;
+	private final List<long[]> damage = new ArrayList<long[]>();
+	private final List<Double> damageRates = new ArrayList<Double>();
+	private final Set<Integer> dataTracks = new HashSet<Integer>();
+	private final AtomicInteger openHandles = new AtomicInteger();
+	private volatile boolean discLoaded = true;
+	private Random random = new Random(0);
+
+	/**
+	 * Creates a simulated drive holding a disc of {@link #DEFAULT_TRACKS} tracks of
+	 * {@link #DEFAULT_TRACK_SECTORS} sectors each.
+	 */
+	public SimulatedDriveBackend() {
+		pattern.write(0, PATTERN, 0, PATTERN.length);
+		// shared once, so reading a sector through the paranoia wrapper does not allocate
+		for (int i = 0; i < PATTERN_SECTORS; i++) {
+			patternSectors[i] = pattern.share((long) i*CDDAParanoia.cddaFrameSize);
+		}
+	}
+
+	@Override
+	public CDDAParanoia createParanoia() {
+		return new CDDAParanoia(new Paranoia(), new Interface());
+	}
+
+	@Override
+	public DiscId createDiscId(String device) {
+		return new DiscId(device, new DiscIdLib());
+	}
+
+	@Override
+	public CDIO createCDIO() {
+		return new CDIO(new CDIOLib());
+	}
+
+	/**
+	 * Sets the layout of the simulated disc.
+	 * @param tracks - the number of audio tracks, at most 99.
+	 * @param trackSectors - the length of each track in sectors.
+	 */
+	public void setTracks(int tracks, int trackSectors) {
+		if (tracks < 1 || tracks >= DiscIdCalculator.MAX_TRACKS || trackSectors < 1) {
+			throw new IllegalArgumentException("Invalid disc layout ["+tracks+"] tracks of ["+trackSectors+"] sectors");
+		}
+		this.tracks = tracks;
+		this.trackSectors = trackSectors;
+	}
+
+	/**
+	 * Sets the sector the first track starts at, 0 by default. The sectors before it are a
+	 * hidden pregap that belongs to no track.
+	 * @param sector - the first sector of the first track.
+	 */
+	public void setFirstTrackSector(int sector) {
+		firstTrackSector = Math.max(0, sector);
+	}
+
+	/**
+	 * Marks tracks of the simulated disc as data tracks, as on a mixed mode or enhanced CD.
+	 * @param tracks - the data tracks.
+	 */
+	public void setDataTracks(int... tracks) {
+		dataTracks.clear();
+		for (int track : tracks) {
+			dataTracks.add(track);
+		}
+	}
+	
+	/**
+	 * Gets the total number of sectors on the simulated disc.
+	 * @return The number of sectors.
+	 */
+	public int getSectors() {
+		return firstTrackSector + tracks*trackSectors;
+	}
+
+	/**
+	 * Sets the fastest speed of the drive, which limits its throughput to {@code speed} times
+	 * {@link #SECTORS_PER_SECOND}. Speeds requested through the paranoia wrapper below this
+	 * are honoured. A speed of 0, the default, reads without any limit and ignores requested
+	 * speeds.
+	 * @param speed - the fastest speed of the drive.
+	 */
+	public void setMaxSpeed(int speed) {
+		maxSpeed = Math.max(0, speed);
+	}
+
+	/**
+	 * Sets the time taken to move to a sector other than the one after the last sector read.
+	 * @param millis - the seek latency in milliseconds.
+	 */
+	public void setSeekMillis(long millis) {
+		seekNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Sets the time taken to spin the disc up when the drive is first opened, and after it
+	 * has been ejected.
+	 * @param millis - the spin-up time in milliseconds.
+	 */
+	public void setSpinUpMillis(long millis) {
+		spinUpNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Sets the probability that a single attempt to read a sector fails. The paranoia library
+	 * retries a failed read up to its retry limit before skipping the sector, seeking back to
+	 * the sector for each retry, while a raw read stops at the sector and reports an error if 
+	 * it is the first sector read.
+	 * @param rate - the probability of a read error, from 0 to 1.
+	 */
+	public void setReadErrorRate(double rate) {
+		readErrorRate = rate;
+	}
+
+	/**
+	 * Adds a damaged stretch of the disc, over which sectors fail to read with the given
+	 * probability rather than the disc wide read error rate.
+	 * @param firstSector - the first damaged sector.
+	 * @param sectors - the number of damaged sectors.
+	 * @param rate - the probability of a read error within the stretch, from 0 to 1.
+	 */
+	public void addDamage(long firstSector, int sectors, double rate) {
+		damage.add(new long[] {firstSector, firstSector+sectors});
+		damageRates.add(rate);
+	}
+
+	/**
+	 * Sets the probability that a sector is read from the wrong position on the disc. Raw
+	 * reads return the sector's audio shifted by up to {@value #MAX_JITTER_SAMPLES} samples,
+	 * while the paranoia library rereads the sector and reports the repair.
+	 * @param rate - the probability of jitter, from 0 to 1.
+	 */
+	public void setJitterRate(double rate) {
+		jitterRate = rate;
+	}
+
+	/**
+	 * Sets the speed at or below which reads never fail, as on a disc that can only be read
+	 * reliably when the drive slows down. Above this speed the chance of a read error rises
+	 * in proportion to the speed, up to the configured rates at the drive's fastest speed.
+	 * Only applies when the drive has a maximum speed. The default of 0 applies the rates at
+	 * any speed.
+	 * @param speed - the fastest speed that reads without errors.
+	 */
+	public void setErrorFreeSpeed(int speed) {
+		errorFreeSpeed = Math.max(0, speed);
+	}
+	
+	/**
+	 * Sets whether the drive holds a disc. Opening an empty drive identifies the drive and
+	 * then fails, as a real drive does.
+	 * @param loaded - false to empty the drive.
+	 */
+	public void setDiscLoaded(boolean loaded) {
+		discLoaded = loaded;
+	}
+
+	/**
+	 * Gets the number of drive handles identified and not yet closed.
+	 * @return The number of open handles.
+	 */
+	public int getOpenHandles() {
+		return openHandles.get();
+	}
+	
+	/**
+	 * Sets the seed of the generator used to inject errors and jitter.
+	 * @param seed - the seed.
+	 */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	private int firstSector(int track) {
+		return firstTrackSector + (track-1)*trackSectors;
+	}
+
+	/**
+	 * Determines whether an attempt to read the given sector fails.
+	 */
+	private boolean readError(long sector) {
+		double rate = readErrorRate;
+		for (int i = 0; i < damage.size(); i++) {
+			long[] stretch = damage.get(i);
+			if (sector >= stretch[0] && sector < stretch[1]) {
+				rate = Math.max(rate, damageRates.get(i));
+			}
+		}
+		return rate > 0 && random.nextDouble() < rate*drive.errorScale();
+	}
+
+	private boolean jitter() {
+		return jitterRate > 0 && random.nextDouble() < jitterRate;
+	}
+
+	/**
+	 * The state of the simulated drive shared by the wrappers, which paces reads to the
+	 * configured throughput and latencies.
+	 */
+	private class Drive {
+
+		private int speed;
+		private long head = -1;
+		private long due;
+		private boolean spinning;
+		private boolean mediaChanged;
+
+		synchronized void open() {
+			if (!spinning) {
+				spinning = true;
+				head = -1;
+				delay(spinUpNanos);
+			}
+		}
+
+		synchronized void setSpeed(int requested) {
+			speed = requested <= 0 ? maxSpeed : Math.min(requested, maxSpeed);
+		}
+		
+		/**
+		 * Gets the proportion of the configured error rates that applies at the current speed.
+		 */
+		synchronized double errorScale() {
+			int current = speed <= 0 ? maxSpeed : speed;
+			if (errorFreeSpeed <= 0 || maxSpeed <= 0) {
+				return 1;
+			}
+			return current <= errorFreeSpeed ? 0 : (current - errorFreeSpeed)/(double) (maxSpeed - errorFreeSpeed);
+		}
+
+		/**
+		 * Moves the head to the given sector and spends the time taken to read the given
+		 * number of sectors from it, seeking first if the head is elsewhere.
+		 */
+		synchronized void read(long sector, int sectors) {
+			if (sector != head) {
+				delay(seekNanos);
+			}
+			head = sector + sectors;
+			reread(sectors);
+		}
+		
+		/**
+		 * Spends the time taken to read the given number of sectors again, without moving 
+		 * the head.
+		 */
+		synchronized void reread(int sectors) {
+			int current = speed <= 0 ? maxSpeed : speed;
+			if (current > 0) {
+				delay(sectors*TimeUnit.SECONDS.toNanos(1)/(current*SECTORS_PER_SECOND));
+			}
+		}
+
+		synchronized void eject() {
+			spinning = false;
+			mediaChanged = true;
+		}
+
+		synchronized boolean mediaChanged() {
+			boolean changed = mediaChanged;
+			mediaChanged = false;
+			return changed;
+		}
+
+		/**
+		 * Waits until the drive has spent the given time, on top of any time it has yet to
+		 * spend. Only {@link #CATCH_UP_NANOS} of idle time is carried forward, which makes up
+		 * for oversleeping without giving a slow reader a burst of free sectors.
+		 */
+		private void delay(long nanos) {
+			if (nanos <= 0) {
+				return;
+			}
+			due = Math.max(due, System.nanoTime() - CATCH_UP_NANOS) + nanos;
+			long wait;
+			while ((wait = due - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+			}
+		}
+	}
+
+	private class Paranoia implements CDDAParanoia.LibCDDAParanoiaAPI {
+
+		private long position;
+		private int mode;
+
+		public void paranoia_modeset(Pointer cdpar, int paranoiaMode) {
+			mode = paranoiaMode;
+		}
+
+		public Pointer paranoia_init(Pointer cdpar) {
+			return new Memory(8);
+		}
+
+		public String paranoia_version() {
+			return "simulated";
+		}
+
+		public long paranoia_seek(Pointer cdpar, long seek, int mode) {
+			position = seek;
+			return seek;
+		}
+
+		/**
+		 * Reads the next sector, verifying it with a second overlapping read in any paranoia
+		 * mode, and retrying failed reads up to the retry limit before skipping the sector.
+		 */
+		public Pointer paranoia_read_limited(Pointer cdrom, CDDAParanoia.ParanoiaCallback callback, int max_retries) {
+			if (position >= getSectors()) {
+				return null;
+			}
+			long sector = position++;
+			NativeLong inpos = null;
+			drive.read(sector, 1);
+			if (mode != 0) {
+				drive.reread(1);
+			}
+			int retries = 0;
+			while (readError(sector)) {
+				if (inpos == null) {
+					inpos = position(sector);
+				}
+				if (callback != null) {
+					callback.callback(inpos, PARANOIA_CB_READERR);
+				}
+				if (++retries > max_retries) {
+					if (callback != null) {
+						callback.callback(inpos, PARANOIA_CB_SKIP);
+					}
+					break;
+				}
+				drive.read(sector, 1);
+			}
+			if (mode != 0 && jitter()) {
+				if (callback != null) {
+					callback.callback(inpos == null ? position(sector) : inpos, PARANOIA_CB_FIXUP_EDGE);
+				}
+				drive.reread(1);
+			}
+			return patternSectors[(int) (sector % PATTERN_SECTORS)];
+		}
+		
+		/**
+		 * Gets the position of a sector as reported to the callback, in 16 bit words.
+		 */
+		private NativeLong position(long sector) {
+			return new NativeLong(sector*CDDAParanoia.cddaFrameSize/2);
+		}
+
+		public Pointer paranoia_read(Pointer cdrom, CDDAParanoia.ParanoiaCallback callback) {
+			return paranoia_read_limited(cdrom, callback, 20);
+		}
+
+		public void paranoia_free(Pointer cdpar) {
+		}
+	}
+
+	private class Interface implements CDDAParanoia.LibCDDAInterfaceAPI {
+
+		public String cdda_version() {
+			return "simulated";
+		}
+
+		public Pointer cdda_identify(String device, int messagedest, String message) {
+			openHandles.incrementAndGet();
+			return new Memory(8);
+		}
+
+		public Pointer cdda_find_a_cdrom(int messagedest, String message) {
+			openHandles.incrementAndGet();
+			return new Memory(8);
+		}
+
+		public int cdda_close(Pointer cdrom) {
+			openHandles.decrementAndGet();
+			return 0;
+		}
+
+		public long cdda_tracks(Pointer cdrom) {
+			return tracks;
+		}
+
+		public long cdda_track_firstsector(Pointer cdrom, int track) {
+			return firstSector(track);
+		}
+
+		public long cdda_track_lastsector(Pointer cdrom, int track) {
+			return firstSector(track+1) - 1;
+		}
+
+		public String cdda_messages(Pointer cdrom) {
+			return "";
+		}
+
+		public String cdda_errors(Pointer cdrom) {
+			return "";
+		}
+
+		public void cdda_verbose_set(Pointer cdrom, int err_action, int mes_action) {
+		}
+
+		public int cdda_open(Pointer cdrom) {
+			if (!discLoaded) {
+				return -2;
+			}
+			drive.open();
+			return 0;
+		}
+
+		public int cdda_track_copyp(Pointer cdrom, int track) {
+			return 0;
+		}
+
+		public int cdda_track_channels(Pointer cdrom, int track) {
+			return 2;
+		}
+
+		public int cdda_track_preemp(Pointer cdrom, int track) {
+			return 0;
+		}
+
+		public int cdda_speed_set(Pointer cdrom, int speed) {
+			drive.setSpeed(speed);
+			return 1;
+		}
+
+		public int cdda_track_audiop(Pointer cdrom, int track) {
+			return dataTracks.contains(track) ? 0 : 1;
+		}
+
+		/**
+		 * Reads sectors without verification, stopping short at the first sector that fails.
+		 */
+		public long cdda_read(Pointer cdrom, Pointer buffer, long beginsector, long sectors) {
+			sectors = Math.min(sectors, getSectors() - beginsector);
+			if (sectors <= 0) {
+				return -1;
+			}
+			int read = 0;
+			while (read < sectors && !readError(beginsector + read)) {
+				long sector = beginsector + read;
+				int shift = jitter() ? 4*(random.nextInt(2*MAX_JITTER_SAMPLES+1) - MAX_JITTER_SAMPLES) : 0;
+				copySector(buffer, (long) read*CDDAParanoia.cddaFrameSize, sector, shift);
+				read++;
+			}
+			drive.read(beginsector, Math.max(read, 1));
+			return read == 0 ? -1 : read;
+		}
+
+		/**
+		 * Copies a sector of the pattern into the buffer, starting the given number of bytes
+		 * away from the sector's true position.
+		 */
+		private void copySector(Pointer buffer, long offset, long sector, int shift) {
+			int start = (int) ((sector % PATTERN_SECTORS)*CDDAParanoia.cddaFrameSize + shift + PATTERN.length) % PATTERN.length;
+			int length = Math.min(CDDAParanoia.cddaFrameSize, PATTERN.length - start);
+			buffer.write(offset, PATTERN, start, length);
+			if (length < CDDAParanoia.cddaFrameSize) {
+				buffer.write(offset + length, PATTERN, 0, CDDAParanoia.cddaFrameSize - length);
+			}
+		}
+	}
+
+	private class DiscIdLib implements DiscId.LibdiscIdAPI {
+
+		private final DiscIdCalculator calculator = new DiscIdCalculator();
+		private final int[] offsets = new int[DiscIdCalculator.MAX_TRACKS];
+		private int first;
+		private int last;
+
+		public Pointer discid_new() {
+			return new Memory(8);
+		}
+
+		public void discid_free(Pointer disc) {
+		}
+
+		public int discid_read(Pointer disc, String device) {
+			first = 1;
+			last = tracks;
+			offsets[0] = getSectors() + DiscIdCalculator.LEAD_IN;
+			for (int track = 1; track <= tracks; track++) {
+				offsets[track] = firstSector(track) + DiscIdCalculator.LEAD_IN;
+			}
+			return 1;
+		}
+
+		public int discid_put(Pointer d, int first, int last, int[] offsets) {
+			this.first = first;
+			this.last = last;
+			System.arraycopy(offsets, 0, this.offsets, 0, offsets.length);
+			return 1;
+		}
+
+		public String discid_get_error_msg(Pointer d) {
+			return "";
+		}
+
+		public String discid_get_id(Pointer d) {
+			return calculator.getMusicBrainzDiscId(first, last, offsets);
+		}
+
+		public String discid_get_freedb_id(Pointer disc) {
+			return calculator.getFreeDbId(last, offsets);
+		}
+
+		public String discid_get_submission_url(Pointer d) {
+			return "http://mm.musicbrainz.org/bare/cdlookup.html?id="+discid_get_id(d);
+		}
+
+		public String discid_get_webservice_url(Pointer d) {
+			return "http://mm.musicbrainz.org/ws/1/release?type=xml&discid="+discid_get_id(d);
+		}
+
+		public String discid_get_default_device() {
+			return "/dev/cdrom";
+		}
+
+		public int discid_get_first_track_num(Pointer d) {
+			return first;
+		}
+
+		public int discid_get_last_track_num(Pointer d) {
+			return last;
+		}
+
+		public int discid_get_sectors(Pointer d) {
+			return offsets[0];
+		}
+
+		public int discid_get_track_offset(Pointer d, int track_num) {
+			return offsets[track_num];
+		}
+
+		public int discid_get_track_length(Pointer d, int track_num) {
+			return (track_num == last ? offsets[0] : offsets[track_num+1]) - offsets[track_num];
+		}
+	}
+
+	private class CDIOLib implements CDIO.LibCDIOAPI {
+
+		public int cdio_eject_media_drive(String device) {
+			drive.eject();
+			return 0;
+		}
+
+		public Pointer cdio_open(String device, int driver) {
+			return new Memory(8);
+		}
+
+		public void cdio_destroy(Pointer cdio) {
+		}
+
+		public int cdio_get_media_changed(Pointer cdio) {
+			return drive.mediaChanged() ? 1 : 0;
+		}
+
+		public int mmc_get_tray_status(Pointer cdio) {
+			return 0;
+		}
+
+		public byte cdio_get_num_tracks(Pointer cdio) {
+			return (byte) tracks;
+		}
+	}
+}
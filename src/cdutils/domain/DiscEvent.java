@@ -0,0 +1,46 @@
+package cdutils.domain;
+
+import java.util.EventObject;
+
+/**
+ * <p>
+ * The {@code DiscEvent} is sent to disc listeners when a disc is inserted into or ejected 
+ * from a watched drive.
+ * 
+ * @author ollie
+ *
+ */
+public class DiscEvent extends EventObject {
+
+	private static final long serialVersionUID = 6325011877411658321L;
+	private final String device;
+	private final DriveStatus status;
+	
+	/**
+	 * Constructs a new disc event.
+	 * @param src - the object that this event originated from.
+	 * @param device - the locator of the drive.
+	 * @param status - the new status of the drive.
+	 */
+	public DiscEvent(Object src, String device, DriveStatus status) {
+		super(src);
+		this.device = device;
+		this.status = status;
+	}
+	
+	/**
+	 * Obtains the locator of the drive the event relates to.
+	 * @return The device locator.
+	 */
+	public String getDevice() {
+		return device;
+	}
+	
+	/**
+	 * Obtains the status of the drive when the event was raised.
+	 * @return The drive status.
+	 */
+	public DriveStatus getStatus() {
+		return status;
+	}
+}
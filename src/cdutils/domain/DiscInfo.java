@@ -0,0 +1,115 @@
+package cdutils.domain;
+
+/**
+ * <p>
+ * A snapshot of the identifiers and layout of a disc, as calculated by the discid library
+ * from a single read of the disc's table of contents.
+ * 
+ * @author ollie
+ *
+ */
+public class DiscInfo {
+
+	private String musicBrainzDiscId;
+	private String freeDbId;
+	private String submissionURL;
+	private String webServiceURL;
+	private int firstTrack;
+	private int lastTrack;
+	private int sectors;
+	private int[] trackOffsets = new int[0];
+	private int[] trackLengths = new int[0];
+	
+	public String getMusicBrainzDiscId() {
+		return musicBrainzDiscId;
+	}
+	
+	public void setMusicBrainzDiscId(String musicBrainzDiscId) {
+		this.musicBrainzDiscId = musicBrainzDiscId;
+	}
+	
+	public String getFreeDbId() {
+		return freeDbId;
+	}
+	
+	public void setFreeDbId(String freeDbId) {
+		this.freeDbId = freeDbId;
+	}
+	
+	public String getSubmissionURL() {
+		return submissionURL;
+	}
+	
+	public void setSubmissionURL(String submissionURL) {
+		this.submissionURL = submissionURL;
+	}
+	
+	public String getWebServiceURL() {
+		return webServiceURL;
+	}
+	
+	public void setWebServiceURL(String webServiceURL) {
+		this.webServiceURL = webServiceURL;
+	}
+	
+	public int getFirstTrack() {
+		return firstTrack;
+	}
+	
+	public void setFirstTrack(int firstTrack) {
+		this.firstTrack = firstTrack;
+	}
+	
+	public int getLastTrack() {
+		return lastTrack;
+	}
+	
+	public void setLastTrack(int lastTrack) {
+		this.lastTrack = lastTrack;
+	}
+	
+	/**
+	 * Gets the length of the disc in sectors, including the 150 sector lead-in.
+	 * @return The number of sectors on the disc.
+	 */
+	public int getSectors() {
+		return sectors;
+	}
+	
+	public void setSectors(int sectors) {
+		this.sectors = sectors;
+	}
+	
+	/**
+	 * Gets the sector offset of the given track, including the 150 sector lead-in.
+	 * @param track - the track number.
+	 * @return The sector offset of the track.
+	 */
+	public int getTrackOffset(int track) {
+		return trackOffsets[track - firstTrack];
+	}
+	
+	/**
+	 * Gets the length of the given track in sectors.
+	 * @param track - the track number.
+	 * @return The length of the track.
+	 */
+	public int getTrackLength(int track) {
+		return trackLengths[track - firstTrack];
+	}
+	
+	/**
+	 * Sets the offsets and lengths of the tracks, indexed from the first track.
+	 * @param trackOffsets - the sector offsets of the tracks.
+	 * @param trackLengths - the lengths of the tracks in sectors.
+	 */
+	public void setTracks(int[] trackOffsets, int[] trackLengths) {
+		this.trackOffsets = trackOffsets;
+		this.trackLengths = trackLengths;
+	}
+	
+	@Override
+	public String toString() {
+		return "MusicBrainz id: "+musicBrainzDiscId+" FreeDB id: "+freeDbId+" tracks: "+firstTrack+"-"+lastTrack+" sectors: "+sectors;
+	}
+}
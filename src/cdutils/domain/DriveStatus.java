@@ -0,0 +1,23 @@
+package cdutils.domain;
+
+/**
+ * <p>
+ * The state of a CDROM drive as reported by the drive itself, without reading the disc.
+ * 
+ * @author ollie
+ *
+ */
+public enum DriveStatus {
+	
+	/** The drive's tray is open. */
+	TRAY_OPEN,
+	
+	/** The tray is closed and there is no disc in the drive. */
+	NO_DISC,
+	
+	/** There is a disc in the drive. */
+	DISC_PRESENT,
+	
+	/** The drive could not be queried. */
+	UNKNOWN
+}
@@ -0,0 +1,27 @@
+package cdutils.domain;
+
+/**
+ * <p>
+ * The strategy used to read audio from the disc. Faster modes do less verification of the
+ * data read from the drive.
+ * 
+ * @author ollie
+ *
+ */
+public enum ReadMode {
+	
+	/** Reads sectors straight from the drive with no verification. */
+	RAW,
+	
+	/** Verifies overlapping reads only, without the paranoia library's repair stages. */
+	VERIFY,
+	
+	/** Full paranoia verification and repair of every sector. */
+	FULL,
+	
+	/** 
+	 * Reads sectors straight from the drive, switching to full paranoia for the sectors
+	 * around any errors. 
+	 */
+	AUTO
+}
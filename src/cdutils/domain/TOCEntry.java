@@ -64,6 +64,10 @@ public class TOCEntry {
 		this.channels = channels;
 	}
 	
+	public int getSectors() {
+		return lastSector - firstSector + 1;
+	}
+	
 	public String getDuration() {
 		int secs = getDurationSecs();
 		int mins = secs/60;
@@ -0,0 +1,135 @@
+package cdutils.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>
+ * Calculates the AccurateRip v1 and v2 checksums of a track incrementally as its audio data
+ * is ripped. As required by AccurateRip, the first 5 sectors (less one sample) of the first 
+ * track and the last 5 sectors of the last track are excluded from the checksums.
+ * 
+ * @author ollie
+ *
+ */
+public class AccurateRipChecksum {
+
+	private static final int EXCLUDED_SAMPLES = 5*588;
+	private static final int SAMPLES_PER_SECTOR = 588;
+	
+	private final int track;
+	private final long totalSamples;
+	private final long checkFrom;
+	private final long checkTo;
+	private long multiplier = 1;
+	private long v1;
+	private long v2;
+	private int partial;
+	private int partialBytes;
+	
+	/**
+	 * Creates a checksum for a track.
+	 * @param track - the track number.
+	 * @param sectors - the number of sectors in the track.
+	 * @param firstTrack - true if this is the first audio track on the disc.
+	 * @param lastTrack - true if this is the last audio track on the disc.
+	 */
+	public AccurateRipChecksum(int track, int sectors, boolean firstTrack, boolean lastTrack) {
+		this.track = track;
+		totalSamples = (long) sectors*SAMPLES_PER_SECTOR;
+		checkFrom = firstTrack ? EXCLUDED_SAMPLES : 1;
+		checkTo = lastTrack ? totalSamples - EXCLUDED_SAMPLES : totalSamples;
+	}
+	
+	/**
+	 * Adds the next block of the track's audio data to the checksums.
+	 * @param data - the buffer holding the data.
+	 * @param offset - the offset of the data in the buffer.
+	 * @param length - the number of bytes to add.
+	 */
+	public void update(byte[] data, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+		while (partialBytes > 0 && i < end) {
+			partial |= (data[i++] & 0xff) << (8*partialBytes);
+			if (++partialBytes == 4) {
+				add(partial);
+				partial = 0;
+				partialBytes = 0;
+			}
+		}
+		for (; i + 4 <= end; i += 4) {
+			add((data[i] & 0xff) | (data[i+1] & 0xff) << 8 | (data[i+2] & 0xff) << 16 | (data[i+3] & 0xff) << 24);
+		}
+		for (; i < end; i++) {
+			partial |= (data[i] & 0xff) << (8*partialBytes++);
+		}
+	}
+	
+	/**
+	 * Adds the remaining bytes of a buffer to the checksums, reading the samples straight from 
+	 * the buffer so a direct buffer need not be copied to the heap. The buffer's position is 
+	 * advanced to its limit.
+	 * @param data - the buffer holding the data.
+	 */
+	public void update(ByteBuffer data) {
+		ByteBuffer samples = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		while (partialBytes > 0 && samples.hasRemaining()) {
+			partial |= (samples.get() & 0xff) << (8*partialBytes);
+			if (++partialBytes == 4) {
+				add(partial);
+				partial = 0;
+				partialBytes = 0;
+			}
+		}
+		while (samples.remaining() >= 4) {
+			add(samples.getInt());
+		}
+		while (samples.hasRemaining()) {
+			partial |= (samples.get() & 0xff) << (8*partialBytes++);
+		}
+		data.position(data.limit());
+	}
+	
+	private void add(int sample) {
+		if (multiplier >= checkFrom && multiplier <= checkTo) {
+			long product = (sample & 0xffffffffL)*multiplier;
+			v1 += product & 0xffffffffL;
+			v2 += (product >>> 32) + (product & 0xffffffffL);
+		}
+		multiplier++;
+	}
+	
+	public int getTrack() {
+		return track;
+	}
+	
+	/**
+	 * Determines whether every sample of the track has been added.
+	 * @return True if the checksums are complete.
+	 */
+	public boolean isComplete() {
+		return multiplier > totalSamples;
+	}
+	
+	/**
+	 * Gets the AccurateRip v1 checksum.
+	 * @return The v1 checksum as an unsigned 32 bit value.
+	 */
+	public long getV1() {
+		return v1 & 0xffffffffL;
+	}
+	
+	/**
+	 * Gets the AccurateRip v2 checksum.
+	 * @return The v2 checksum as an unsigned 32 bit value.
+	 */
+	public long getV2() {
+		return v2 & 0xffffffffL;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d.\tv1: %08x\tv2: %08x", track, getV1(), getV2());
+	}
+}
@@ -0,0 +1,269 @@
+package cdutils.service;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sound.sampled.AudioInputStream;
+
+import cdutils.domain.TOC;
+
+/**
+ * <p>
+ * An asynchronous facade over a {@link CD}. Each operation is queued on a thread dedicated
+ * to the drive and returns immediately with a {@code Future} for the result. Since a disc can
+ * only be accessed by one operation at a time, operations run in the order they were submitted.
+ * <p>
+ * Cancelling the future of a rip with {@code mayInterruptIfRunning} set cancels the read from
+ * the disc, and waits for the rip to stop. Cancelling any other operation that is already 
+ * running discards its result.
+ * 
+ * @author ollie
+ *
+ */
+public class AsyncCD {
+
+	/** The time between attempts to cancel a rip that has not yet opened the drive. */
+	private static final long CANCEL_RETRY_MILLIS = 10;
+	private final CD cd;
+	private final ExecutorService executor;
+	
+	/**
+	 * Creates a new {@code AsyncCD} for the given drive, naming the drive's thread after its
+	 * device if it is a {@link CDDA} drive.
+	 * @param cd - the drive to run operations on.
+	 */
+	public AsyncCD(CD cd) {
+		this(cd, cd instanceof CDDA ? ((CDDA) cd).getMetrics().getDevice() : cd.getClass().getSimpleName());
+	}
+	
+	/**
+	 * Creates a new {@code AsyncCD} for the given drive.
+	 * @param cd - the drive to run operations on.
+	 * @param name - the name of the drive, used to name the drive's thread.
+	 */
+	public AsyncCD(CD cd, final String name) {
+		this.cd = cd;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "async-cd ["+name+"]");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * Gets the drive this facade runs operations on.
+	 * @return The drive.
+	 */
+	public CD getCD() {
+		return cd;
+	}
+	
+	/**
+	 * @see CD#getTableOfContents()
+	 */
+	public Future<TOC> getTableOfContents() {
+		return submit(new Callable<TOC>() {
+			@Override
+			public TOC call() throws Exception {
+				return cd.getTableOfContents();
+			}
+		}, false);
+	}
+	
+	/**
+	 * @see CD#eject()
+	 */
+	public Future<Boolean> eject() {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return cd.eject();
+			}
+		}, false);
+	}
+	
+	/**
+	 * @see CD#getCDDBId()
+	 */
+	public Future<String> getCDDBId() {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return cd.getCDDBId();
+			}
+		}, false);
+	}
+	
+	/**
+	 * @see CD#getMusicBrainzDiscId()
+	 */
+	public Future<String> getMusicBrainzDiscId() {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return cd.getMusicBrainzDiscId();
+			}
+		}, false);
+	}
+	
+	/**
+	 * @see CD#getMusicBrainzURL()
+	 */
+	public Future<String> getMusicBrainzURL() {
+		return submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return cd.getMusicBrainzURL();
+			}
+		}, false);
+	}
+	
+	/**
+	 * @see CD#isDiscInDrive()
+	 */
+	public Future<Boolean> isDiscInDrive() {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return cd.isDiscInDrive();
+			}
+		}, false);
+	}
+	
+	/**
+	 * Opens the track as an {@code AudioInputStream}, the stream itself is read by the caller.
+	 * @see CD#getTrack(int, RipProgressListener)
+	 */
+	public Future<AudioInputStream> getTrack(final int track, final RipProgressListener listener) {
+		return submit(new Callable<AudioInputStream>() {
+			@Override
+			public AudioInputStream call() throws Exception {
+				return cd.getTrack(track, listener);
+			}
+		}, false);
+	}
+	
+	/**
+	 * @see CD#getTrack(int, RipProgressListener, OutputStream)
+	 */
+	public Future<Void> getTrack(final int track, final RipProgressListener listener, final OutputStream output) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				cd.getTrack(track, listener, output);
+				return null;
+			}
+		}, true);
+	}
+	
+	/**
+	 * @see CD#getTrack(int, RipProgressListener, WritableByteChannel)
+	 */
+	public Future<Void> getTrack(final int track, final RipProgressListener listener, final WritableByteChannel output) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				cd.getTrack(track, listener, output);
+				return null;
+			}
+		}, true);
+	}
+	
+	/**
+	 * @see CD#ripDisc(TrackSink, RipProgressListener)
+	 */
+	public Future<Void> ripDisc(final TrackSink sink, final RipProgressListener listener) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				cd.ripDisc(sink, listener);
+				return null;
+			}
+		}, true);
+	}
+	
+	/**
+	 * @see CD#ripImage(File, File, RipProgressListener)
+	 */
+	public Future<Void> ripImage(final File image, final File cue, final RipProgressListener listener) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				cd.ripImage(image, cue, listener);
+				return null;
+			}
+		}, true);
+	}
+	
+	/**
+	 * Stops the drive's thread once the operations already submitted have completed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	private <V> Future<V> submit(Callable<V> callable, boolean rip) {
+		CDTask<V> task = new CDTask<V>(callable, rip);
+		executor.execute(task);
+		return task;
+	}
+	
+	/**
+	 * A task that cancels the read from the disc when a running rip is cancelled.
+	 */
+	private class CDTask<V> extends FutureTask<V> {
+		
+		private final boolean rip;
+		private volatile boolean running;
+		
+		CDTask(Callable<V> callable, boolean rip) {
+			super(callable);
+			this.rip = rip;
+		}
+		
+		@Override
+		public void run() {
+			running = true;
+			try {
+				super.run();
+			} finally {
+				synchronized (this) {
+					running = false;
+					notifyAll();
+				}
+			}
+		}
+		
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled && rip && mayInterruptIfRunning) {
+				// the drive ignores a cancel that arrives before the rip has opened it, so keep 
+				// cancelling until the rip has stopped
+				try {
+					while (running) {
+						cd.cancel();
+						synchronized (this) {
+							if (running) {
+								wait(CANCEL_RETRY_MILLIS);
+							}
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return cancelled;
+		}
+	}
+}
@@ -1,9 +1,13 @@
 package cdutils.service;
 
+import java.io.File;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import javax.sound.sampled.AudioInputStream;
 
+import cdutils.domain.DiscInfo;
+import cdutils.domain.ReadMode;
 import cdutils.domain.TOC;
 import cdutils.exception.DiscReadException;
 
@@ -52,6 +56,13 @@ public interface CD {
 	 */
 	public String getMusicBrainzURL() throws DiscReadException;
 	
+	/**
+	 * Gets all of the identifiers and track offsets of the disc from a single read of the disc.
+	 * @return The disc information.
+	 * @throws DiscReadException if there is no disc in the drive or the disc cannot be read.
+	 */
+	public DiscInfo getDiscInfo() throws DiscReadException;
+	
 	/**
 	 * Determines whether the drive contains a disc.
 	 * @return True if there is a disc in the drive. 
@@ -92,6 +103,56 @@ public interface CD {
 	 */
 	public void getTrack(int track, RipProgressListener listener, OutputStream output) throws DiscReadException;
 	
+	/**
+	 * Gets the track with the given id and writes it to the given channel. Implementations
+	 * should avoid copying the audio through the Java heap where their source allows it.
+	 * @param track - the id of the track to get.
+	 * @param listener - a progress listener, may be null.
+	 * @param output - the channel to write the track to.
+	 * @throws DiscReadException if there is no disc in the drive, the disc cannot be read or the channel cannot be written.
+	 */
+	public void getTrack(int track, RipProgressListener listener, WritableByteChannel output) throws DiscReadException;
+	
+	/**
+	 * Rips every audio track on the disc in a single pass, opening the drive once and
+	 * reading sequentially across track boundaries. Each track is passed to the given sink.
+	 * @param sink - the sink receiving the tracks.
+	 * @param listener - a progress listener for the whole disc, may be null.
+	 * @throws DiscReadException if there is no disc in the drive, the disc cannot be read or the sink fails.
+	 */
+	public void ripDisc(TrackSink sink, RipProgressListener listener) throws DiscReadException;
+	
+	/**
+	 * Rips every audio track on the disc in one continuous pass to a single image file, and 
+	 * writes a CUE sheet describing the tracks in the image. The image is a wave file if its
+	 * name ends in {@code .wav}, a Wave64 file if it ends in {@code .w64}, or raw sectors if it 
+	 * ends in {@code .bin}.
+	 * @param image - the image file to write.
+	 * @param cue - the CUE sheet to write.
+	 * @param listener - a progress listener for the whole disc, may be null.
+	 * @throws DiscReadException if there is no disc in the drive, the disc cannot be read or the files cannot be written.
+	 * @throws IllegalArgumentException if the image's name has any other extension.
+	 */
+	public void ripImage(File image, File cue, RipProgressListener listener) throws DiscReadException;
+	
+	/**
+	 * Rips the track with the given id to a wave file. The sectors written are recorded in a journal
+	 * next to the file, so if the rip is interrupted calling this again carries on from the last sector
+	 * that was safely written rather than starting the track again.
+	 * @param track - the id of the track to rip.
+	 * @param output - the wave file to write.
+	 * @param listener - a progress listener, may be null.
+	 * @throws DiscReadException if there is no disc in the drive, the disc cannot be read or the file cannot be written.
+	 */
+	public void ripTrack(int track, File output, RipProgressListener listener) throws DiscReadException;
+	
+	/**
+	 * Gets the AccurateRip checksums calculated while the given track was last ripped.
+	 * @param track - the id of the track.
+	 * @return The checksums, or null if the track has not been completely ripped.
+	 */
+	public AccurateRipChecksum getAccurateRipChecksum(int track);
+	
 	/**
 	 * Cancels the current read from the disc and frees all resources.
 	 */
@@ -99,5 +160,11 @@ public interface CD {
 	
 	public void setVerbose();
 	
+	/**
+	 * Sets the strategy used to read audio from the disc, {@code FULL} paranoia by default.
+	 * @param readMode - the read mode.
+	 */
+	public void setReadMode(ReadMode readMode);
+	
 	public String getLibraryVersions();
 }
@@ -1,19 +1,32 @@
 package cdutils.service;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.tritonus.share.sampled.convert.TAsynchronousFilteredAudioInputStream;
 
 import cdutils.dao.CDDAParanoia;
 import cdutils.dao.CDIO;
 import cdutils.dao.DiscId;
+import cdutils.dao.DriveBackend;
+import cdutils.dao.NativeDriveBackend;
+import cdutils.domain.DiscInfo;
+import cdutils.domain.DriveStatus;
+import cdutils.domain.ReadMode;
 import cdutils.domain.RipProgressEvent;
 import cdutils.domain.TOC;
 import cdutils.domain.TOCEntry;
@@ -31,14 +44,34 @@ import ollie.utils.logging.LogProvider;
 @LogProvider
 public class CDDA implements CD {
 
+	private static final int FRAMES_PER_READ = 32;
+	private static final int DIAGNOSTIC_EVENTS = 1024;
+	private static final int JOURNAL_SECTORS = 375;
+	private static final int TRANSFER_SECTORS = 256;
+	private static final int DEFAULT_READ_AHEAD_SECTORS = 512;
+	private static final long PREFETCH_WAIT_MILLIS = 5000;
+	/** The speed setting that adapts the read speed to the condition of the disc. */
+	public static final int ADAPTIVE_SPEED = 0;
 	private final Log logger;
 	private volatile boolean busy;
 	private String device;
 	private CDDAParanoia paranoia;
 	private DiscId discId;
 	private CDIO cdio;
+	private final TOCCache tocCache = TOCCache.getInstance();
+	private final Map<Integer, AccurateRipChecksum> checksums = new ConcurrentHashMap<Integer, AccurateRipChecksum>();
 	private volatile boolean terminated;
 	private volatile boolean ripping;
+	private final Object lock = new Object();
+	private final RipDiagnostics diagnostics = new RipDiagnostics(DIAGNOSTIC_EVENTS);
+	private final DriveMetrics metrics;
+	private final SpeedController speedController;
+	private volatile int speed = ADAPTIVE_SPEED;
+	private boolean adaptive;
+	private volatile int readAheadSectors = DEFAULT_READ_AHEAD_SECTORS;
+	private volatile int prefetchSectors;
+	private Prefetch prefetch;
+	private volatile SectorRing producing;
 	private AudioFormat	 cddaFormat = new AudioFormat(
 		AudioFormat.Encoding.PCM_SIGNED,
 		44100.0F, 16, 2, 4, 44100.0F, false);
@@ -49,14 +82,26 @@ public class CDDA implements CD {
 	 * @param device - the CDROM drive locator.
 	 */
 	public CDDA(String device) {
+		this(device, NativeDriveBackend.getInstance());
+	}
+	
+	/**
+	 * Constructs a new {@code CDDA} object that accesses the drive through the given backend,
+	 * such as a {@link cdutils.dao.SimulatedDriveBackend} for running without a drive.
+	 * @param device - the CDROM drive locator.
+	 * @param backend - the backend providing access to the drive.
+	 */
+	public CDDA(String device, DriveBackend backend) {
 		this.device = device;
 		busy = false;
 		terminated = false;
 		ripping = false;
-		paranoia = new CDDAParanoia();
+		paranoia = backend.createParanoia();
+		metrics = new DriveMetrics(device, paranoia);
+		speedController = new SpeedController(paranoia);
 		logger = LogFactory.getLog(getClass());
-		discId = new DiscId(device);
-		cdio = new CDIO();
+		discId = backend.createDiscId(device);
+		cdio = backend.createCDIO();
 	}
 		
 	/* (non-Javadoc)
@@ -65,6 +110,7 @@ public class CDDA implements CD {
 	@Override
 	public boolean eject() {
 		cancel();
+		tocCache.invalidate(device);
 		return cdio.eject(device);
 	}
 	
@@ -73,7 +119,7 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public String getCDDBId() throws DiscReadException {
-		return discId.getFreeDdId();
+		return getDiscInfo().getFreeDbId();
 	}
 	
 	/* (non-Javadoc)
@@ -81,7 +127,7 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public String getMusicBrainzDiscId() throws DiscReadException {
-		return discId.getMusicBrainzDiscId();
+		return getDiscInfo().getMusicBrainzDiscId();
 	}
 		
 	/* (non-Javadoc)
@@ -89,7 +135,23 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public String getMusicBrainzURL() throws DiscReadException {
-		return discId.getMusicBrainzURL();
+		return getDiscInfo().getWebServiceURL();
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getDiscInfo()
+	 */
+	@Override
+	public DiscInfo getDiscInfo() throws DiscReadException {
+		DiscInfo info = null;
+		if (isMediaUnchanged()) {
+			info = tocCache.getDiscInfo(device);
+		}
+		if (info == null) {
+			info = discId.readDiscInfo();
+			tocCache.putDiscInfo(device, info);
+		}
+		return info;
 	}
 	
 	/* (non-Javadoc)
@@ -97,12 +159,14 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public TOC getTableOfContents() throws DiscReadException {
-		TOC toc;
-		try {
-			open();
-			toc = buildTOC();
-		} finally {
-			close();
+		TOC toc = getCachedTOC();
+		if (toc == null) {
+			try {
+				open();
+				toc = buildTOC();
+			} finally {
+				close();
+			}
 		}
 		return toc;
 	}
@@ -112,6 +176,19 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public boolean isDiscInDrive() {
+		if (busy) {
+			// if the disc is in use then there must be a disc in the drive
+			return true;
+		}
+		if (device != null) {
+			DriveStatus status = cdio.getDriveStatus(device);
+			if (status != DriveStatus.UNKNOWN) {
+				if (status != DriveStatus.DISC_PRESENT) {
+					tocCache.invalidate(device);
+				}
+				return status == DriveStatus.DISC_PRESENT;
+			}
+		}
 		boolean result = true;
 		try {
 			open();
@@ -122,6 +199,9 @@ public class CDDA implements CD {
 		} finally {
 			close();
 		}
+		if (!result) {
+			tocCache.invalidate(device);
+		}
 		return result;
 	}
 	
@@ -146,21 +226,31 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public AudioInputStream getTrack(int track, RipProgressListener listener) throws DiscReadException {
-		AudioInputStream ais;
 		logger.info("Starting rip on track ["+track+"]");
-		try {
-			open();
-			TOC toc = buildTOC();
-			if (track < 1 || track > toc.size()) {
-				throw new IllegalArgumentException("Track ["+track+"] is an invalid track no");
+		CddaInputStream in = claimPrefetch(track, listener);
+		if (in == null) {
+			try {
+				open(true);
+			} catch (DiscReadException e) {
+				throw new RuntimeException(e);
 			}
-			logger.info("Building audio input stream.");
-			ais = new CddaAudioInputStream(track, listener);
-		} catch (Exception e) {
-			close();
-			throw new RuntimeException(e);
+			// only a drive opened here is closed, a drive in use by another caller is left alone
+			try {
+				TOC toc = getCachedTOC();
+				if (toc == null) {
+					toc = buildTOC();
+				}
+				logger.info("Building audio input stream.");
+				in = new CddaInputStream(getEntry(toc, track), listener, toc);
+				in.start();
+			} catch (Exception e) {
+				close();
+				throw new RuntimeException(e);
+			}
+		} else {
+			logger.info("Continuing from ["+in.frameCount+"] prefetched sectors.");
 		}
-		return ais;
+		return new AudioInputStream(in, cddaFormat, (long) in.totalFrames*CDDAParanoia.cddaFrameSize/cddaFormat.getFrameSize());
 	}
 	
 	/* (non-Javadoc)
@@ -168,36 +258,331 @@ public class CDDA implements CD {
 	 */
 	@Override
 	public void getTrack(int track, RipProgressListener listener, OutputStream output) throws DiscReadException {
-		AudioInputStream ais = getTrack(track, listener);
-		byte[] bout = new byte[1024];
+		transferTrack(track, listener, ByteBuffer.allocate(TRANSFER_SECTORS*CDDAParanoia.cddaFrameSize), output, null);
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getTrack(int, cdutils.service.RipProgressListener, java.nio.channels.WritableByteChannel)
+	 */
+	@Override
+	public void getTrack(int track, RipProgressListener listener, WritableByteChannel output) throws DiscReadException {
+		transferTrack(track, listener, ByteBuffer.allocateDirect(TRANSFER_SECTORS*CDDAParanoia.cddaFrameSize), null, output);
+	}
+	
+	/**
+	 * Reads a track straight from the disc to a stream or channel. The buffer is filled with 
+	 * whole sectors before each write, so the output sees a few large writes rather than one 
+	 * per read from the drive. Audio is read into a direct buffer for channels. In the 
+	 * {@code RAW} read mode the drive reads straight into that buffer, so the audio reaches the
+	 * channel without passing through the heap. The paranoia modes copy each verified frame 
+	 * through a single reused heap array on its way into the buffer.
+	 */
+	private void transferTrack(int track, RipProgressListener listener, ByteBuffer buffer, 
+			OutputStream output, WritableByteChannel channel) throws DiscReadException {
+		logger.info("Starting transfer of track ["+track+"]");
+		int sector = -1;
+		open(true);
+		try {
+			TOC toc = getCachedTOC();
+			if (toc == null) {
+				toc = buildTOC();
+			}
+			List<TOCEntry> entries = toc.entries();
+			TOCEntry ent = getEntry(toc, track);
+			checksums.remove(track);
+			AccurateRipChecksum checksum = new AccurateRipChecksum(track, ent.getSectors(), 
+					ent == entries.get(0), ent == entries.get(entries.size()-1));
+			sector = ent.getFirstSector();
+			seek(sector, track);
+			int remaining = ent.getSectors();
+			int progress = -1;
+			while (remaining > 0) {
+				buffer.clear();
+				while (remaining > 0 && buffer.remaining() >= CDDAParanoia.cddaFrameSize) {
+					if (terminated) {
+						diagnostics.record(RipDiagnostics.TERMINATED, sector, track);
+						throw new DiscReadException("Rip cancelled.");
+					}
+					int read = readFrames(sector, Math.min(remaining, FRAMES_PER_READ), buffer);
+					remaining -= read;
+					sector += read;
+				}
+				buffer.flip();
+				checksum.update(buffer.duplicate());
+				if (channel == null) {
+					output.write(buffer.array(), 0, buffer.limit());
+				} else {
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+				int percent = (int) (((ent.getSectors() - remaining)*100L)/ent.getSectors());
+				if (listener != null && percent != progress) {
+					progress = percent;
+					listener.onRipProgressEvent(new RipProgressEvent(this, percent));
+				}
+			}
+			checksums.put(track, checksum);
+			diagnostics.record(RipDiagnostics.COMPLETE, sector, track);
+			logger.info("Reached end of track, releasing resources.");
+		} catch (IOException e) {
+			ripError(sector, e, listener);
+			throw new DiscReadException(e);
+		} catch (DiscReadException e) {
+			ripError(sector, e, listener);
+			throw e;
+		} finally {
+			close();
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#ripDisc(cdutils.service.TrackSink, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public void ripDisc(TrackSink sink, RipProgressListener listener) throws DiscReadException {
+		logger.info("Starting rip of whole disc");
+		int sector = -1;
+		open(true);
+		try {
+			TOC toc = getCachedTOC();
+			if (toc == null) {
+				toc = buildTOC();
+			}
+			int totalFrames = 0;
+			for (TOCEntry ent : toc.entries()) {
+				totalFrames += ent.getSectors();
+			}
+			ByteBuffer frameBuffer = ByteBuffer.allocate(FRAMES_PER_READ*CDDAParanoia.cddaFrameSize);
+			int frameCount = 0;
+			int progress = -1;
+			for (TOCEntry ent : toc.entries()) {
+				if (ent.getFirstSector() != sector) {
+					sector = ent.getFirstSector();
+					seek(sector, ent.getId());
+				}
+				sink.startTrack(ent);
+				checksums.remove(ent.getId());
+				AccurateRipChecksum checksum = new AccurateRipChecksum(ent.getId(), ent.getSectors(), 
+						ent == toc.entries().get(0), ent == toc.entries().get(toc.size()-1));
+				int remaining = ent.getSectors();
+				while (remaining > 0) {
+					if (terminated) {
+						diagnostics.record(RipDiagnostics.TERMINATED, sector, ent.getId());
+						throw new DiscReadException("Rip cancelled.");
+					}
+					frameBuffer.clear();
+					int read = readFrames(sector, Math.min(remaining, FRAMES_PER_READ), frameBuffer);
+					sink.write(frameBuffer.array(), 0, frameBuffer.position());
+					checksum.update(frameBuffer.array(), 0, frameBuffer.position());
+					remaining -= read;
+					sector += read;
+					frameCount += read;
+					int percent = (int) ((frameCount*100L)/totalFrames);
+					if (listener != null && percent != progress) {
+						progress = percent;
+						listener.onRipProgressEvent(new RipProgressEvent(this, percent));
+					}
+				}
+				sink.endTrack(ent);
+				checksums.put(ent.getId(), checksum);
+			}
+			diagnostics.record(RipDiagnostics.COMPLETE, sector, toc.size());
+			logger.info("Reached end of disc, releasing resources.");
+		} catch (IOException e) {
+			ripError(sector, e, listener);
+			throw new DiscReadException(e);
+		} catch (DiscReadException e) {
+			ripError(sector, e, listener);
+			throw e;
+		} finally {
+			close();
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#ripImage(java.io.File, java.io.File, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public void ripImage(File image, File cue, RipProgressListener listener) throws DiscReadException {
+		ImageRipper.rip(this, image, cue, listener);
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#ripTrack(int, java.io.File, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public void ripTrack(int track, File output, RipProgressListener listener) throws DiscReadException {
+		logger.info("Starting resumable rip of track ["+track+"] to ["+output+"]");
+		int sector = -1;
+		open(true);
+		RandomAccessFile file = null;
 		try {
-			while (ais.read(bout) > 0) {
-				output.write(bout);
+			TOC toc = getCachedTOC();
+			if (toc == null) {
+				toc = buildTOC();
+			}
+			List<TOCEntry> entries = toc.entries();
+			TOCEntry ent = getEntry(toc, track);
+			RipJournal journal = new RipJournal(output);
+			file = new RandomAccessFile(output, "rw");
+			FileChannel channel = file.getChannel();
+			int done = journal.resume(ent, channel, WaveHeader.RIFF_LENGTH);
+			if (done == 0) {
+				ByteBuffer header = WaveHeader.riff((long) ent.getSectors()*CDDAParanoia.cddaFrameSize);
+				while (header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+			} else {
+				logger.info("Resuming track ["+track+"] after ["+done+"] verified sectors");
 			}
+			long position = WaveHeader.RIFF_LENGTH + (long) done*CDDAParanoia.cddaFrameSize;
+			file.setLength(position);
+			// AccurateRip checksums cover the whole track, so they are only kept for uninterrupted rips
+			checksums.remove(track);
+			AccurateRipChecksum checksum = done == 0 ? new AccurateRipChecksum(track, ent.getSectors(), 
+					ent == entries.get(0), ent == entries.get(entries.size()-1)) : null;
+			sector = ent.getFirstSector() + done;
+			seek(sector, track);
+			ByteBuffer frameBuffer = ByteBuffer.allocate(FRAMES_PER_READ*CDDAParanoia.cddaFrameSize);
+			CRC32 crc = new CRC32();
+			int rangeStart = sector;
+			int remaining = ent.getSectors() - done;
+			int progress = -1;
+			while (remaining > 0) {
+				if (terminated) {
+					diagnostics.record(RipDiagnostics.TERMINATED, sector, track);
+					throw new DiscReadException("Rip cancelled.");
+				}
+				frameBuffer.clear();
+				int read = readFrames(sector, Math.min(remaining, FRAMES_PER_READ), frameBuffer);
+				crc.update(frameBuffer.array(), 0, frameBuffer.position());
+				if (checksum != null) {
+					checksum.update(frameBuffer.array(), 0, frameBuffer.position());
+				}
+				frameBuffer.flip();
+				while (frameBuffer.hasRemaining()) {
+					position += channel.write(frameBuffer, position);
+				}
+				remaining -= read;
+				sector += read;
+				if (sector - rangeStart >= JOURNAL_SECTORS || remaining == 0) {
+					journal.record(rangeStart, sector - rangeStart, crc.getValue());
+					crc.reset();
+					rangeStart = sector;
+				}
+				int percent = (int) (((ent.getSectors() - remaining)*100L)/ent.getSectors());
+				if (listener != null && percent != progress) {
+					progress = percent;
+					listener.onRipProgressEvent(new RipProgressEvent(this, percent));
+				}
+			}
+			file.close();
+			file = null;
+			journal.delete();
+			if (checksum != null) {
+				checksums.put(track, checksum);
+			}
+			diagnostics.record(RipDiagnostics.COMPLETE, sector, track);
+			logger.info("Reached end of track, releasing resources.");
 		} catch (IOException e) {
+			ripError(sector, e, listener);
 			throw new DiscReadException(e);
+		} catch (DiscReadException e) {
+			ripError(sector, e, listener);
+			throw e;
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					logger.warn("Failed to close ["+output+"]", e);
+				}
+			}
+			close();
+		}
+	}
+	
+	/**
+	 * Seeks to the given sector, recording the seek in the diagnostics and metrics.
+	 */
+	private void seek(int sector, int track) {
+		long start = System.nanoTime();
+		paranoia.seek(sector);
+		metrics.seeked(System.nanoTime() - start);
+		diagnostics.record(RipDiagnostics.SEEK, sector, track);
+	}
+	
+	/**
+	 * Reads frames from the given sector, which must be the current read position, recording 
+	 * the read in the diagnostics and metrics.
+	 */
+	private int readFrames(int sector, int count, ByteBuffer buffer) throws DiscReadException {
+		long start = System.nanoTime();
+		int read = paranoia.readFrames(count, buffer);
+		metrics.read(read, System.nanoTime() - start);
+		diagnostics.record(RipDiagnostics.READ, sector, read);
+		if (adaptive) {
+			speedController.update(read);
+		}
+		return read;
+	}
+	
+	/**
+	 * Records and logs an error that ended a disc rip and informs the listener.
+	 */
+	private void ripError(int sector, Exception e, RipProgressListener listener) {
+		diagnostics.record(RipDiagnostics.READ_ERROR, sector, 0);
+		if (e instanceof DiscReadException && !terminated) {
+			metrics.readFailed();
+		}
+		if (busy) {
+			logger.error("Error reading CD. Errors: "+paranoia.getErrors()+" Message: "+paranoia.getMessage()+"\n"+diagnostics, e);
+		} else {
+			logger.error("Error reading CD.", e);
+		}
+		if (listener != null) {
+			listener.onError(e.getMessage());
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getAccurateRipChecksum(int)
+	 */
+	@Override
+	public AccurateRipChecksum getAccurateRipChecksum(int track) {
+		return checksums.get(track);
+	}
+	
 	/* (non-Javadoc)
 	 * @see cdutils.service.CD#cancel()
 	 */
 	@Override
 	public void cancel() {
-		if (busy) {
+		synchronized (lock) {
+			if (!busy) {
+				return;
+			}
 			if (ripping) {
+				// the rip clears the flag when it closes the drive
 				terminated = true;
-				while (terminated) {
+				lock.notifyAll();
+				SectorRing ring = producing;
+				if (ring != null) {
+					// wakes a stream's producer waiting for its caller to read
+					ring.cancel();
+				}
+				while (terminated && busy) {
 					try {
-						Thread.sleep(100);
+						lock.wait();
 					} catch (InterruptedException e) {
 						throw new RuntimeException(e);
 					}
 				}
-			} else {
-				close();
+				return;
 			}
 		}
+		close();
 	}
 	
 	/**
@@ -206,19 +591,53 @@ public class CDDA implements CD {
 	 * @throws DiscReadException - if there is no disc in the drive, the disc cannot be read or no drive can be found.
 	 */
 	private void open() throws DiscReadException {
+		open(false);
+	}
+	
+	/**
+	 * Opens the disc, marking the drive as ripping at the same time as it is marked busy when 
+	 * opened for a rip, so a cancel that arrives while the rip reads the table of contents 
+	 * terminates the rip rather than closing the drive beneath it. A drive that fails to open 
+	 * is closed again, so callers only need to close the drive once this has returned.
+	 * @param rip - true if the drive is opened for a rip.
+	 * @throws DiscReadException - if there is no disc in the drive, the disc cannot be read or no drive can be found.
+	 */
+	private void open(boolean rip) throws DiscReadException {
+		releasePrefetch();
 		if (busy) {
 			throw new DiscInUseException();
 		}
-		if (device != null) {
-			paranoia.open(device);
-			logger.info("Opened cdrom ["+device+"]");
-		} else {
-			logger.info("Searching for cdrom.");
-			paranoia.open();
+		long start = System.nanoTime();
+		boolean opened = false;
+		try {
+			if (device != null) {
+				paranoia.open(device);
+				logger.info("Opened cdrom ["+device+"]");
+			} else {
+				logger.info("Searching for cdrom.");
+				paranoia.open();
+			}
+			// raw reads give no statistics to adapt to, and a raw read error ends the rip anyway
+			adaptive = speed == ADAPTIVE_SPEED && paranoia.getReadMode() != ReadMode.RAW;
+			paranoia.setStatisticsEnabled(adaptive || metrics.isRegistered());
+			if (adaptive) {
+				speedController.start();
+			} else {
+				paranoia.setSpeed(speed == ADAPTIVE_SPEED ? -1 : speed);
+			}
+			opened = true;
+		} finally {
+			if (!opened) {
+				// the drive may have been identified before the open failed
+				paranoia.close();
+			}
 		}
-		paranoia.setSpeed(24);
+		metrics.opened(System.nanoTime() - start);
 		logger.info("***** DRIVE OPEN *****");
-		busy = true;
+		synchronized (lock) {
+			ripping = rip;
+			busy = true;
+		}
 	}
 	
 	/**
@@ -226,17 +645,85 @@ public class CDDA implements CD {
 	 */
 	private void close() {
 		paranoia.close();
-		busy = false;
-		terminated = false;
-		ripping = false;
+		synchronized (lock) {
+			busy = false;
+			terminated = false;
+			ripping = false;
+			lock.notifyAll();
+		}
 	}
 	
 	/**
-	 * Builds a table of contents object, assumes that the opening and closing of the disc
-	 * will be handled by the caller. 
+	 * Takes over the drive from a stream that has prefetched the start of the given track.
+	 * @return A stream for the track, or null if the track has not been prefetched.
+	 */
+	private CddaInputStream claimPrefetch(int track, RipProgressListener listener) {
+		synchronized (lock) {
+			Prefetch p = prefetch;
+			if (p == null || p.entry.getId() != track || p.next != null || p.abandoned) {
+				return null;
+			}
+			p.next = new CddaInputStream(p.entry, listener, p.toc);
+			lock.notifyAll();
+			return p.next;
+		}
+	}
+	
+	/**
+	 * Stops a prefetch that is holding the drive open and waits for the drive to be released,
+	 * so that another operation can open it.
+	 */
+	private void releasePrefetch() {
+		synchronized (lock) {
+			Prefetch p = prefetch;
+			if (p != null && p.next == null) {
+				p.abandoned = true;
+				lock.notifyAll();
+				while (prefetch == p || busy) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}
+	}
+	
+	private static TOCEntry getEntry(TOC toc, int track) {
+		for (TOCEntry ent : toc.entries()) {
+			if (ent.getId() == track) {
+				return ent;
+			}
+		}
+		throw new IllegalArgumentException("Track ["+track+"] is an invalid track no");
+	}
+	
+	/**
+	 * Gets the table of contents for the drive from the cache, unless the media in the drive 
+	 * has changed since it was cached.
+	 * @return The cached table of contents, or null if there is no valid cached entry.
+	 */
+	private TOC getCachedTOC() {
+		return isMediaUnchanged() ? tocCache.get(device) : null;
+	}
+	
+	/**
+	 * Determines whether the media in the drive is unchanged since the cache was last checked,
+	 * invalidating the cached entries for the drive if it has changed.
+	 * @return True if the cached entries for the drive can be used.
+	 */
+	private boolean isMediaUnchanged() {
+		return device != null && tocCache.validate(device, cdio.getMediaGeneration(device));
+	}
+	
+	/**
+	 * Builds a table of contents object and caches it, assumes that the opening and closing 
+	 * of the disc will be handled by the caller. 
 	 * @return The table of contents.
 	 */
 	private TOC buildTOC() {
+		long start = System.nanoTime();
 		TOC toc = new TOC();
 		int tracks = paranoia.getTracks();
 		for (int i = 1; i < tracks+1; i++) {
@@ -251,93 +738,270 @@ public class CDDA implements CD {
 				toc.addEntry(ent);
 			}
 		}
+		metrics.tocRead(System.nanoTime() - start);
 		logger.info("Got table of contents:\n"+toc.toString());
+		tocCache.put(device, toc);
 		return toc;
 	}
 	
 	/**
-	 * An {@code AudioInputStream} that reads the track passed into the constructor from the 
-	 * disc currently in the drive.
+	 * Reads the track passed into the constructor from the disc currently in the drive. A 
+	 * producer thread reads ahead from the drive into a {@code SectorRing} while the caller 
+	 * reads from the ring, so reading the disc overlaps with whatever the caller does with
+	 * the audio. If prefetching is enabled the producer goes on to read the start of the next
+	 * track, and carries on producing for that track's stream if it is claimed.
 	 */
-	private class CddaAudioInputStream extends TAsynchronousFilteredAudioInputStream {
+	private class CddaInputStream extends InputStream implements Runnable {
 		
-		RipProgressListener listener;
-		int frameCount = 0;
-		int firstFrame;
-		int lastFrame;
-		int totalFrames;
-		int track;
+		final SectorRing ring;
+		final RipProgressListener listener;
+		final TOC toc;
+		final TOCEntry entry;
+		final int firstFrame;
+		final int totalFrames;
+		final int track;
+		final AccurateRipChecksum checksum;
+		int frameCount;
 		
 		/**
-		 * Constructs a new {@code CddaAudioInputStream} for the given track. 
-		 * @param track - the track to read from the disc.
+		 * Constructs a new {@code CddaInputStream} for the given track. 
+		 * @param entry - the track to read from the disc.
 		 */
-		public CddaAudioInputStream(int track, RipProgressListener listener) throws DiscReadException {
-			super(cddaFormat, AudioSystem.NOT_SPECIFIED);
-			paranoia.getTracks();
-			logger.info("Calling getFirstSector");
-			firstFrame = paranoia.getFirstSector(track);
-			if (firstFrame < 0) {
-				throw new DiscReadException("Received error ["+firstFrame+"] on first frame for track ["+track+"]");
-			}
-			logger.info("Got FS "+firstFrame+" Calling getLastSector");
-			lastFrame = paranoia.getLastSector(track);
-			if (lastFrame < 0) {
-				throw new DiscReadException("Received error ["+lastFrame+"] on last frame for track ["+track+"]");
-			}
-			totalFrames = lastFrame - firstFrame;
-			logger.info("Got LS "+lastFrame+"Seeking");
-			paranoia.seek(firstFrame);
+		CddaInputStream(TOCEntry entry, RipProgressListener listener, TOC toc) {
+			this.entry = entry;
+			this.toc = toc;
 			this.listener = listener;
-			this.track = track;
-			ripping = true;
-			logger.info("Errors: "+paranoia.getErrors());
-			logger.info("Message: "+paranoia.getMessage());
+			track = entry.getId();
+			firstFrame = entry.getFirstSector();
+			totalFrames = entry.getSectors();
+			List<TOCEntry> entries = toc.entries();
+			checksums.remove(track);
+			checksum = new AccurateRipChecksum(track, totalFrames, 
+					entry == entries.get(0), entry == entries.get(entries.size()-1));
+			ring = new SectorRing(readAheadSectors, (long) totalFrames*CDDAParanoia.cddaFrameSize);
+		}
+		
+		/**
+		 * Seeks to the start of the track and starts the producer thread.
+		 */
+		void start() {
+			logger.info("Track ["+track+"] sectors ["+firstFrame+"-"+entry.getLastSector()+"], seeking");
+			seek(firstFrame, track);
+			Thread producer = new Thread(this, "cdda-reader-"+(device == null ? "auto" : device));
+			producer.setDaemon(true);
+			producer.start();
 		}
 		
+		/**
+		 * Produces this track and any following tracks claimed from a prefetch. The last track 
+		 * produced releases the drive.
+		 */
 		@Override
-		public void execute() {
-			logger.info("In execute frame count: "+frameCount);
-			logger.info("In execute total frames: "+totalFrames);
-			logger.info("Buffer availible: "+getCircularBuffer().availableWrite());
-			logger.info("Errors: "+paranoia.getErrors());
-			logger.info("Message: "+paranoia.getMessage());
-			if (terminated) {
-				closeAIS();
-				logger.info("Terminated, releasing resources.");
-				return;
+		public void run() {
+			try {
+				CddaInputStream stream = this;
+				while (stream != null) {
+					producing = stream.ring;
+					metrics.setRing(stream.ring);
+					stream = stream.produce();
+				}
+			} finally {
+				producing = null;
+				metrics.setRing(null);
 			}
+		}
+		
+		/**
+		 * Reads the rest of the track from the drive into the ring until it is complete, the rip
+		 * is cancelled or the stream is closed. The drive is released, or handed to a prefetch 
+		 * of the next track, before the end of the track is signalled to the caller, so the 
+		 * caller can open the drive again as soon as it has read to the end.
+		 * @return The stream for the next track if it was prefetched and claimed, otherwise null.
+		 */
+		CddaInputStream produce() {
+			int progress = -1;
+			Exception error = null;
+			Prefetch prefetched = null;
 			try {
-				while (frameCount < totalFrames && getCircularBuffer().availableWrite() >= CDDAParanoia.cddaFrameSize) {
-					logger.info("Getting next frame...");
-					byte[] frame = paranoia.readNextFrame();
-					logger.info("Writing frame...");
-					getCircularBuffer().write(frame);
-					logger.info("Writing frame done");
-					logger.info("Errors: "+paranoia.getErrors());
-					logger.info("Message: "+paranoia.getMessage());
-					frameCount++;
+				while (frameCount < totalFrames) {
+					if (terminated) {
+						diagnostics.record(RipDiagnostics.TERMINATED, firstFrame+frameCount, track);
+						error = new DiscReadException("Rip cancelled.");
+						logger.info("Terminated, releasing resources.");
+						break;
+					}
+					ByteBuffer buffer = ring.acquire(Math.min(totalFrames-frameCount, FRAMES_PER_READ));
+					if (buffer == null) {
+						if (terminated) {
+							continue;
+						}
+						logger.info("Stream closed, releasing resources.");
+						break;
+					}
+					int start = buffer.position();
+					int read = readFrames(firstFrame+frameCount, Math.min(totalFrames-frameCount, FRAMES_PER_READ), buffer);
+					checksum.update(buffer.array(), start, buffer.position()-start);
+					ring.commit(buffer.position()-start);
+					frameCount += read;
+					int percent = (frameCount*100)/totalFrames;
+					if (listener != null && percent != progress) {
+						progress = percent;
+						listener.onRipProgressEvent(new RipProgressEvent(CDDA.this, percent));
+					}
 				}
-				if (listener != null) {
-					listener.onRipProgressEvent(new RipProgressEvent(CDDA.this, ((frameCount*100)/totalFrames)));
+				if (frameCount >= totalFrames) {
+					diagnostics.record(RipDiagnostics.COMPLETE, firstFrame+frameCount, track);
+					checksums.put(track, checksum);
+					logger.info("Reached end of audio stream on track ["+track+"].");
+					prefetched = startPrefetch();
 				}
 			} catch (Exception e) {
-				closeAIS();
+				error = e;
+				diagnostics.record(RipDiagnostics.READ_ERROR, firstFrame+frameCount, track);
+				metrics.readFailed();
+				logger.error("Error reading CD. Errors: "+paranoia.getErrors()+" Message: "+paranoia.getMessage()+"\n"+diagnostics, e);
 				if (listener != null) {
 					listener.onError(e.getMessage());
 				}
-				logger.error("Error reading CD.");
 			} finally {
-				if (frameCount >= totalFrames) {
-					closeAIS();
-					logger.info("Reached end of audio stream on track ["+track+"], releasing resources.");
+				if (prefetched == null) {
+					CDDA.this.close();
 				}
+				ring.end(error);
 			}
+			return prefetched == null ? null : prefetchNext(prefetched);
 		}
 		
-		void closeAIS() {
-			getCircularBuffer().close();
-			CDDA.this.close();
+		/**
+		 * Starts a prefetch of the next track if it follows straight on from this one, which 
+		 * keeps the drive open and makes other callers wait for the prefetch to be released.
+		 * @return The prefetch, or null if the next track is not to be prefetched.
+		 */
+		Prefetch startPrefetch() {
+			int budget = prefetchSectors;
+			List<TOCEntry> entries = toc.entries();
+			int index = entries.indexOf(entry);
+			if (budget == 0 || terminated || index == entries.size()-1 
+					|| entries.get(index+1).getFirstSector() != entry.getLastSector()+1) {
+				return null;
+			}
+			Prefetch p = new Prefetch(entries.get(index+1), toc, Math.min(budget, entries.get(index+1).getSectors()));
+			synchronized (lock) {
+				prefetch = p;
+			}
+			return p;
+		}
+		
+		/**
+		 * Reads the start of the next track while the caller drains this track, then waits a 
+		 * few seconds for the next track to be claimed. The drive is released if it is not.
+		 * @param p - the prefetch started for the next track.
+		 * @return The claimed stream for the next track, or null.
+		 */
+		CddaInputStream prefetchNext(Prefetch p) {
+			try {
+				int limit = p.data.length/CDDAParanoia.cddaFrameSize;
+				while (p.sectors < limit && p.next == null && !p.abandoned && !terminated) {
+					ByteBuffer buffer = ByteBuffer.wrap(p.data, p.sectors*CDDAParanoia.cddaFrameSize, 
+							Math.min(limit-p.sectors, FRAMES_PER_READ)*CDDAParanoia.cddaFrameSize);
+					int read = readFrames(p.entry.getFirstSector()+p.sectors, FRAMES_PER_READ, buffer);
+					p.sectors += read;
+				}
+			} catch (Exception e) {
+				// the next stream reads the sectors not prefetched itself and reports any error
+				logger.info("Prefetch of track ["+p.entry.getId()+"] stopped: "+e.getMessage());
+			}
+			CddaInputStream next;
+			synchronized (lock) {
+				long deadline = System.currentTimeMillis() + PREFETCH_WAIT_MILLIS;
+				long wait;
+				while (p.next == null && !p.abandoned && !terminated 
+						&& (wait = deadline - System.currentTimeMillis()) > 0) {
+					try {
+						lock.wait(wait);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				next = p.abandoned ? null : p.next;
+				if (next == null) {
+					// released under the lock, so nothing can claim the prefetch or find the drive busy meanwhile
+					p.abandoned = true;
+					CDDA.this.close();
+				}
+				prefetch = null;
+				lock.notifyAll();
+			}
+			if (next != null) {
+				next.resume(p);
+			}
+			return next;
+		}
+		
+		/**
+		 * Passes the prefetched start of this track into the ring, then this stream is produced by
+		 * the thread that prefetched it.
+		 */
+		void resume(Prefetch p) {
+			checksum.update(p.data, 0, p.sectors*CDDAParanoia.cddaFrameSize);
+			int offset = 0;
+			int length = p.sectors*CDDAParanoia.cddaFrameSize;
+			while (offset < length) {
+				ByteBuffer buffer = ring.acquire((length-offset)/CDDAParanoia.cddaFrameSize);
+				if (buffer == null) {
+					break;
+				}
+				int count = buffer.remaining();
+				buffer.put(p.data, offset, count);
+				ring.commit(count);
+				offset += count;
+			}
+			frameCount = p.sectors;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return ring.read(b, off, len);
+		}
+		
+		@Override
+		public int available() {
+			return ring.available();
+		}
+		
+		/**
+		 * Stops reading ahead and waits for the current read to complete and the drive to be
+		 * released.
+		 */
+		@Override
+		public void close() {
+			ring.cancel();
+			ring.awaitEnd();
+		}
+	}
+	
+	/**
+	 * The start of a track read ahead by the stream for the previous track.
+	 */
+	private static class Prefetch {
+		
+		final TOCEntry entry;
+		final TOC toc;
+		final byte[] data;
+		int sectors;
+		volatile CddaInputStream next;
+		volatile boolean abandoned;
+		
+		Prefetch(TOCEntry entry, TOC toc, int sectors) {
+			this.entry = entry;
+			this.toc = toc;
+			data = new byte[sectors*CDDAParanoia.cddaFrameSize];
 		}
 	}
 
@@ -346,6 +1010,72 @@ public class CDDA implements CD {
 		paranoia.setVerbose(true);
 	}
 	
+	@Override
+	public void setReadMode(ReadMode readMode) {
+		paranoia.setReadMode(readMode);
+	}
+	
+	/**
+	 * Sets the speed at which the disc is read, {@link #ADAPTIVE_SPEED} (the default) starts 
+	 * at full speed and slows down while the disc is giving read errors, -1 reads at full 
+	 * speed throughout and any other value is a fixed speed such as 24 for 24x. Takes effect 
+	 * the next time the drive is opened.
+	 * <p>
+	 * An adaptive speed needs the paranoia library to report every read event through a 
+	 * callback across the JNA boundary, which costs some CPU time for each sector read. Where
+	 * that matters more than the condition of the discs, such as when ripping from many drives
+	 * at once, a fixed speed or -1 avoids the callback unless the metrics are registered. In the
+	 * {@code RAW} read mode the speed is not adapted and the adaptive setting reads at full speed.
+	 * @param speed - the read speed.
+	 */
+	public void setSpeed(int speed) {
+		this.speed = speed;
+	}
+	
+	/**
+	 * Sets how far ahead of the caller the drive is read when a track is opened as a stream, 
+	 * 512 sectors (about 7 seconds of audio) by default. Takes effect on the next track opened.
+	 * @param sectors - the number of sectors to buffer.
+	 */
+	public void setReadAheadSectors(int sectors) {
+		if (sectors < 1) {
+			throw new IllegalArgumentException("Read ahead must be at least one sector");
+		}
+		readAheadSectors = sectors;
+	}
+	
+	/**
+	 * Sets how many sectors of the next track a stream may read once its own track is 
+	 * complete, 0 (the default) disables prefetching. While the next track is prefetched the
+	 * drive is kept open, and a call to {@link #getTrack(int, RipProgressListener)} for that 
+	 * track within a few seconds carries on from the prefetched sectors without reopening the 
+	 * drive or seeking. The prefetched sectors are held in memory, so this is also the memory 
+	 * budget for prefetching.
+	 * @param sectors - the most sectors to prefetch.
+	 */
+	public void setPrefetchSectors(int sectors) {
+		if (sectors < 0) {
+			throw new IllegalArgumentException("Prefetch cannot be negative");
+		}
+		prefetchSectors = sectors;
+	}
+	
+	/**
+	 * Gets the diagnostic events recorded while ripping from this drive.
+	 * @return The rip diagnostics.
+	 */
+	public RipDiagnostics getDiagnostics() {
+		return diagnostics;
+	}
+	
+	/**
+	 * Gets the metrics of the rips from this drive, which can be registered as an MBean.
+	 * @return The drive metrics.
+	 */
+	public DriveMetrics getMetrics() {
+		return metrics;
+	}
+	
 	@Override
 	public String getLibraryVersions() {
 		return paranoia.getVersion();
@@ -0,0 +1,370 @@
+package cdutils.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.domain.TOC;
+import cdutils.domain.TOCEntry;
+
+/**
+ * <p>
+ * A CUE sheet describing the tracks of a disc image held in one or more files of raw 
+ * 2352 byte sectors or wave files of CD audio. Sectors are numbered from the start of the 
+ * audio in the first file, so a track's first sector is its INDEX 01 position plus the length 
+ * of any files before it. A {@code PREGAP} on the first track, for a disc whose first track 
+ * does not start at sector 0, moves the audio in the files along by its length, so the sectors
+ * match those of the disc. A {@code PREGAP} on any other track is not supported.
+ * <p>
+ * Sheets are either read from a file or made for a single file image of a disc with 
+ * {@link #forImage(File, TOC, boolean)} and written out with {@link #write(File)}.
+ * 
+ * @author ollie
+ *
+ */
+public class CueSheet {
+
+	private static final int FRAMES_PER_SECOND = 75;
+	private static final String BINARY = "BINARY";
+	private static final String WAVE = "WAVE";
+	private final List<File> files = new ArrayList<File>();
+	private final List<String> fileTypes = new ArrayList<String>();
+	private final List<Integer> fileSectors = new ArrayList<Integer>();
+	private final List<Long> fileOffsets = new ArrayList<Long>();
+	private final List<Long> fileLengths = new ArrayList<Long>();
+	private final TOC toc = new TOC();
+	private final Map<Integer, Integer> pregaps = new HashMap<Integer, Integer>();
+	private int totalSectors;
+	private int startSector;
+	
+	/**
+	 * Reads a CUE sheet. Each file it names must exist relative to the sheet, and only files of 
+	 * raw sectors ({@code BINARY}) and wave files of CD audio ({@code WAVE}) are supported.
+	 * @param cue - the CUE sheet.
+	 * @return The parsed sheet.
+	 * @throws IOException if the sheet or its files cannot be read, or the sheet is not valid.
+	 */
+	public static CueSheet read(File cue) throws IOException {
+		CueSheet sheet = new CueSheet();
+		List<TOCEntry> tracks = new ArrayList<TOCEntry>();
+		List<Boolean> audio = new ArrayList<Boolean>();
+		int base = 0;
+		TOCEntry current = null;
+		BufferedReader reader = new BufferedReader(new FileReader(cue));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				String[] fields = line.split("\\s+");
+				String command = fields[0].toUpperCase();
+				if (command.equals("FILE")) {
+					base = sheet.totalSectors;
+					File file = new File(cue.getAbsoluteFile().getParentFile(), fileName(line));
+					String type = fields[fields.length-1].toUpperCase();
+					long[] data;
+					if (type.equals(BINARY)) {
+						data = new long[] {0, file.length()};
+					} else if (type.equals(WAVE)) {
+						data = WaveHeader.findData(file);
+					} else {
+						throw new IOException("Unsupported file type in ["+line+"]");
+					}
+					if (data[1] % CDDAParanoia.cddaFrameSize != 0) {
+						throw new IOException("["+file+"] is not a whole number of sectors");
+					}
+					sheet.addFile(file, type, data[0], data[1]);
+				} else if (command.equals("TRACK") && fields.length == 3) {
+					String type = fields[2].toUpperCase();
+					if (!type.equals("AUDIO") && !type.endsWith("/2352")) {
+						throw new IOException("Unsupported track type in ["+line+"]");
+					}
+					current = new TOCEntry();
+					current.setId(Integer.parseInt(fields[1]));
+					current.setFirstSector(-1);
+					current.setChannels(2);
+					tracks.add(current);
+					audio.add(type.equals("AUDIO"));
+				} else if (command.equals("FLAGS") && current != null) {
+					for (int i = 1; i < fields.length; i++) {
+						String flag = fields[i].toUpperCase();
+						if (flag.equals("DCP")) {
+							current.setCopyPermitted(true);
+						} else if (flag.equals("PRE")) {
+							current.setLinearPreemphasis(true);
+						} else if (flag.equals("4CH")) {
+							current.setChannels(4);
+						}
+					}
+				} else if (command.equals("PREGAP") && fields.length == 2 && current != null) {
+					if (tracks.size() != 1 || sheet.files.size() != 1 || current.getFirstSector() >= 0 
+							|| sheet.pregaps.containsKey(current.getId())) {
+						throw new IOException("Only a PREGAP before the indexes of the first track is supported ["+line+"]");
+					}
+					sheet.setStartSector(parseTime(fields[1]));
+					base = sheet.startSector;
+				} else if (command.equals("INDEX") && fields.length == 3 && current != null) {
+					int index = Integer.parseInt(fields[1]);
+					int sector = base + parseTime(fields[2]);
+					if (index == 0) {
+						sheet.pregaps.put(current.getId(), sector);
+					} else if (index == 1) {
+						current.setFirstSector(sector);
+					}
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid CUE sheet ["+cue+"]: "+e.getMessage());
+		} finally {
+			reader.close();
+		}
+		if (sheet.files.isEmpty() || tracks.isEmpty()) {
+			throw new IOException("No tracks in CUE sheet ["+cue+"]");
+		}
+		for (int i = 0; i < tracks.size(); i++) {
+			TOCEntry ent = tracks.get(i);
+			if (ent.getFirstSector() < 0) {
+				throw new IOException("Track ["+ent.getId()+"] has no INDEX 01");
+			}
+			ent.setLastSector(i == tracks.size()-1 ? sheet.totalSectors-1 : tracks.get(i+1).getFirstSector()-1);
+			if (audio.get(i)) {
+				sheet.toc.addEntry(ent);
+			}
+		}
+		return sheet;
+	}
+	
+	/**
+	 * Creates a sheet for a single raw image with no CUE sheet, holding one track that 
+	 * covers the whole image.
+	 * @param image - the raw image.
+	 * @return The sheet.
+	 * @throws IOException if the image is not a whole number of sectors.
+	 */
+	public static CueSheet raw(File image) throws IOException {
+		if (!image.isFile() || image.length() == 0 || image.length() % CDDAParanoia.cddaFrameSize != 0) {
+			throw new IOException("["+image+"] is not a raw image of whole sectors");
+		}
+		CueSheet sheet = new CueSheet();
+		sheet.addFile(image, BINARY, 0, image.length());
+		TOCEntry ent = new TOCEntry();
+		ent.setId(1);
+		ent.setFirstSector(0);
+		ent.setLastSector(sheet.totalSectors-1);
+		ent.setChannels(2);
+		sheet.toc.addEntry(ent);
+		return sheet;
+	}
+	
+	/**
+	 * Creates a sheet for an image holding every audio track of the given table of contents,
+	 * one after another. A track's INDEX 01 is the number of sectors of audio before it in the 
+	 * image, and its flags come from the table of contents. The table of contents does not 
+	 * record where pregaps start, so each pregap is left as the end of the previous track.
+	 * Sectors before the first track are not in the image, and are written as the first 
+	 * track's {@code PREGAP} so the sheet keeps the disc's sector numbers.
+	 * @param image - the image file.
+	 * @param toc - the table of contents of the disc.
+	 * @param wave - true if the image is a wave file, false if it is raw sectors.
+	 * @return The sheet.
+	 */
+	public static CueSheet forImage(File image, TOC toc, boolean wave) {
+		CueSheet sheet = new CueSheet();
+		long length = 0;
+		for (TOCEntry ent : toc.entries()) {
+			length += (long) ent.getSectors()*CDDAParanoia.cddaFrameSize;
+		}
+		sheet.addFile(image, wave ? WAVE : BINARY, wave ? WaveHeader.length(length) : 0, length);
+		int sector = toc.entries().get(0).getFirstSector();
+		sheet.setStartSector(sector);
+		for (TOCEntry ent : toc.entries()) {
+			TOCEntry track = new TOCEntry();
+			track.setId(ent.getId());
+			track.setFirstSector(sector);
+			track.setLastSector(sector + ent.getSectors() - 1);
+			track.setCopyPermitted(ent.isCopyPermitted());
+			track.setLinearPreemphasis(ent.isLinearPreemphasis());
+			track.setChannels(ent.getChannels());
+			sheet.toc.addEntry(track);
+			sector += ent.getSectors();
+		}
+		return sheet;
+	}
+	
+	/**
+	 * Writes the sheet. Files in the same directory as the sheet are named without a path.
+	 * @param cue - the file to write the sheet to.
+	 * @throws IOException if the sheet cannot be written.
+	 */
+	public void write(File cue) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(cue), "UTF-8");
+		try {
+			write(writer, cue.getAbsoluteFile().getParentFile());
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Writes the sheet.
+	 * @param writer - the writer to write the sheet to.
+	 * @param directory - the directory the sheet is in, used to name the files relative to the sheet.
+	 * @throws IOException if the sheet cannot be written.
+	 */
+	public void write(Writer writer, File directory) throws IOException {
+		List<TOCEntry> tracks = toc.entries();
+		int track = 0;
+		for (int i = 0; i < files.size(); i++) {
+			File file = files.get(i);
+			String name = file.getAbsoluteFile().getParentFile().equals(directory) ? file.getName() : file.getAbsolutePath();
+			writer.write("FILE \""+name+"\" "+fileTypes.get(i)+"\r\n");
+			int base = fileSectors.get(i);
+			int end = i == files.size()-1 ? Integer.MAX_VALUE : fileSectors.get(i+1);
+			for (; track < tracks.size() && tracks.get(track).getFirstSector() < end; track++) {
+				TOCEntry ent = tracks.get(track);
+				writer.write(String.format("  TRACK %02d AUDIO\r\n", ent.getId()));
+				StringBuilder flags = new StringBuilder();
+				if (ent.isCopyPermitted()) {
+					flags.append(" DCP");
+				}
+				if (ent.isLinearPreemphasis()) {
+					flags.append(" PRE");
+				}
+				if (ent.getChannels() == 4) {
+					flags.append(" 4CH");
+				}
+				if (flags.length() > 0) {
+					writer.write("    FLAGS"+flags+"\r\n");
+				}
+				if (i == 0 && track == 0 && startSector > 0) {
+					writer.write("    PREGAP "+formatTime(startSector)+"\r\n");
+				}
+				int pregap = getPregap(ent.getId());
+				if (pregap >= base) {
+					writer.write("    INDEX 00 "+formatTime(pregap - base)+"\r\n");
+				}
+				writer.write("    INDEX 01 "+formatTime(ent.getFirstSector() - base)+"\r\n");
+			}
+		}
+	}
+	
+	public List<File> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+	
+	/**
+	 * Gets the offset of the audio in the given file, the length of its header if it is a 
+	 * wave file.
+	 * @param file - the index of the file in {@link #getFiles()}.
+	 * @return The offset in bytes.
+	 */
+	public long getFileOffset(int file) {
+		return fileOffsets.get(file);
+	}
+	
+	/**
+	 * Gets the length of the audio in the given file.
+	 * @param file - the index of the file in {@link #getFiles()}.
+	 * @return The length in bytes, a whole number of sectors.
+	 */
+	public long getFileLength(int file) {
+		return fileLengths.get(file);
+	}
+	
+	/**
+	 * Gets the sector the given file starts at.
+	 * @param file - the index of the file in {@link #getFiles()}.
+	 * @return The file's first sector.
+	 */
+	public int getFileSector(int file) {
+		return fileSectors.get(file);
+	}
+	
+	/**
+	 * Gets the audio tracks in the image.
+	 * @return The table of contents.
+	 */
+	public TOC getTableOfContents() {
+		return toc;
+	}
+	
+	/**
+	 * Gets the sector at which the given track's pregap (INDEX 00) starts.
+	 * @param track - the track id.
+	 * @return The first sector of the pregap, or -1 if the track has no pregap.
+	 */
+	public int getPregap(int track) {
+		Integer sector = pregaps.get(track);
+		return sector == null ? -1 : sector;
+	}
+	
+	public int getTotalSectors() {
+		return totalSectors;
+	}
+	
+	/**
+	 * Gets the sector the audio in the first file starts at, the length of the first track's
+	 * {@code PREGAP}.
+	 * @return The first sector of the audio.
+	 */
+	public int getStartSector() {
+		return startSector;
+	}
+	
+	/**
+	 * Moves the audio in the files, of which there must only be one, to start at the given 
+	 * sector.
+	 */
+	private void setStartSector(int sector) {
+		fileSectors.set(0, sector);
+		totalSectors += sector - startSector;
+		startSector = sector;
+	}
+	
+	/**
+	 * Adds a file holding the given bytes of audio after the sectors of the files before it.
+	 */
+	private void addFile(File file, String type, long offset, long length) {
+		files.add(file);
+		fileTypes.add(type);
+		fileSectors.add(totalSectors);
+		fileOffsets.add(offset);
+		fileLengths.add(length);
+		totalSectors += (int) (length/CDDAParanoia.cddaFrameSize);
+	}
+	
+	private static String fileName(String line) throws IOException {
+		int start = line.indexOf('"');
+		int end = line.lastIndexOf('"');
+		if (start >= 0 && end > start) {
+			return line.substring(start+1, end);
+		}
+		String[] fields = line.split("\\s+");
+		if (fields.length != 3) {
+			throw new IOException("Invalid FILE entry ["+line+"]");
+		}
+		return fields[1];
+	}
+	
+	private static String formatTime(int sector) {
+		return String.format("%02d:%02d:%02d", sector/(60*FRAMES_PER_SECOND), 
+				(sector/FRAMES_PER_SECOND)%60, sector%FRAMES_PER_SECOND);
+	}
+	
+	private static int parseTime(String time) {
+		String[] parts = time.split(":");
+		if (parts.length != 3) {
+			throw new NumberFormatException("Invalid time ["+time+"]");
+		}
+		return (Integer.parseInt(parts[0])*60 + Integer.parseInt(parts[1]))*FRAMES_PER_SECOND + Integer.parseInt(parts[2]);
+	}
+}
@@ -0,0 +1,26 @@
+package cdutils.service;
+
+import cdutils.domain.DiscEvent;
+
+/**
+ * <p>
+ * Instances of classes that implement the {@code DiscListener} interface can register with a
+ * {@link DiscWatcher} to be told when discs are inserted into or ejected from its drives.
+ * 
+ * @author ollie
+ *
+ */
+public interface DiscListener {
+
+	/**
+	 * Informs the listener that a disc has been inserted.
+	 * @param event - the disc event.
+	 */
+	public void onDiscInserted(DiscEvent event);
+	
+	/**
+	 * Informs the listener that a disc has been ejected or removed.
+	 * @param event - the disc event.
+	 */
+	public void onDiscEjected(DiscEvent event);
+}
@@ -0,0 +1,178 @@
+package cdutils.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import cdutils.dao.CDIO;
+import cdutils.dao.DriveBackend;
+import cdutils.dao.NativeDriveBackend;
+import cdutils.domain.DiscEvent;
+import cdutils.domain.DriveStatus;
+import ollie.utils.logging.LogProvider;
+
+/**
+ * <p>
+ * Watches a number of drives for discs being inserted and ejected. A single background thread 
+ * polls every drive using cheap drive status queries, which do not read the disc, and 
+ * publishes a {@link DiscEvent} to the registered listeners whenever the media changes.
+ * 
+ * @author ollie
+ *
+ */
+@LogProvider
+public class DiscWatcher {
+
+	private final Log logger;
+	private final CDIO cdio;
+	private final long pollMillis;
+	private final Map<String, DriveState> drives = new ConcurrentHashMap<String, DriveState>();
+	private final List<DiscListener> listeners = new CopyOnWriteArrayList<DiscListener>();
+	private ScheduledExecutorService poller;
+	
+	/**
+	 * Creates a new watcher.
+	 * @param pollMillis - the interval between polls of the drives in milliseconds.
+	 */
+	public DiscWatcher(long pollMillis) {
+		this(pollMillis, NativeDriveBackend.getInstance());
+	}
+	
+	/**
+	 * Creates a new watcher that queries the drives through the given backend.
+	 * @param pollMillis - the interval between polls of the drives in milliseconds.
+	 * @param backend - the backend providing access to the drives.
+	 */
+	public DiscWatcher(long pollMillis, DriveBackend backend) {
+		this.pollMillis = pollMillis;
+		cdio = backend.createCDIO();
+		logger = LogFactory.getLog(getClass());
+	}
+	
+	/**
+	 * Adds a drive to the set of watched drives.
+	 * @param device - the drive locator.
+	 */
+	public void addDevice(String device) {
+		drives.put(device, new DriveState());
+	}
+	
+	/**
+	 * Stops watching the given drive.
+	 * @param device - the drive locator.
+	 */
+	public void removeDevice(String device) {
+		drives.remove(device);
+	}
+	
+	public void addDiscListener(DiscListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeDiscListener(DiscListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Gets the status of the given drive as of the last poll.
+	 * @param device - the drive locator.
+	 * @return The drive status, {@code UNKNOWN} if the drive has not been polled.
+	 */
+	public DriveStatus getStatus(String device) {
+		DriveState state = drives.get(device);
+		return state == null ? DriveStatus.UNKNOWN : state.status;
+	}
+	
+	/**
+	 * Starts polling the drives.
+	 */
+	public synchronized void start() {
+		if (poller != null) {
+			throw new IllegalStateException("Watcher already started");
+		}
+		poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "disc-watcher");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		poller.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, 0, pollMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stops polling the drives.
+	 */
+	public synchronized void stop() {
+		if (poller != null) {
+			poller.shutdown();
+			poller = null;
+		}
+	}
+	
+	/**
+	 * Polls every watched drive once, publishing events for any changes.
+	 */
+	public void poll() {
+		for (Map.Entry<String, DriveState> entry : drives.entrySet()) {
+			try {
+				poll(entry.getKey(), entry.getValue());
+			} catch (RuntimeException e) {
+				logger.error("Error polling drive ["+entry.getKey()+"]", e);
+			}
+		}
+	}
+	
+	private void poll(String device, DriveState state) {
+		DriveStatus status = cdio.getDriveStatus(device);
+		long generation = cdio.getMediaGeneration(device);
+		boolean wasPresent = state.status == DriveStatus.DISC_PRESENT;
+		boolean present = status == DriveStatus.DISC_PRESENT;
+		boolean swapped = wasPresent && present && generation != state.generation;
+		state.status = status;
+		state.generation = generation;
+		if (wasPresent && (!present || swapped)) {
+			TOCCache.getInstance().invalidate(device);
+			fire(new DiscEvent(this, device, swapped ? DriveStatus.NO_DISC : status), false);
+		}
+		if (present && (!wasPresent || swapped)) {
+			fire(new DiscEvent(this, device, status), true);
+		}
+	}
+	
+	private void fire(DiscEvent event, boolean inserted) {
+		for (DiscListener listener : listeners) {
+			try {
+				if (inserted) {
+					listener.onDiscInserted(event);
+				} else {
+					listener.onDiscEjected(event);
+				}
+			} catch (RuntimeException e) {
+				logger.error("Disc listener failed", e);
+			}
+		}
+	}
+	
+	/**
+	 * The last polled state of a drive.
+	 */
+	private static class DriveState {
+		volatile DriveStatus status = DriveStatus.UNKNOWN;
+		volatile long generation = -1;
+	}
+}
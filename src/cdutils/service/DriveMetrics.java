@@ -0,0 +1,254 @@
+package cdutils.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import cdutils.dao.CDDAParanoia;
+
+/**
+ * <p>
+ * Collects the throughput, errors, buffer health and timings of the rips from a {@link CDDA}
+ * drive, and publishes them as an MBean named {@code cdutils:type=DriveMetrics,device="<device>"}
+ * once registered. Collecting the metrics only updates a few counters per read from the disc.
+ * The counts of paranoia retries, skips and repairs, and the read latencies, are only collected
+ * while the metrics are registered or the read speed is adaptive, since they need the paranoia
+ * library to call back across the JNA boundary.
+ *
+ * @author ollie
+ *
+ */
+public class DriveMetrics implements DriveMetricsMBean {
+
+	private static final long SPEED_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final double SECTORS_PER_SECOND = 75;
+	private final String device;
+	private final CDDAParanoia paranoia;
+	private final AtomicLong sectorsRead = new AtomicLong();
+	private final AtomicLong readErrors = new AtomicLong();
+	private final AtomicLong openNanos = new AtomicLong();
+	private final AtomicLong tocNanos = new AtomicLong();
+	private final AtomicLong seekNanos = new AtomicLong();
+	private final AtomicLong readNanos = new AtomicLong();
+	private volatile long retriesBase;
+	private volatile long skipsBase;
+	private volatile long repairsBase;
+	private volatile SectorRing ring;
+	private volatile double readSpeed;
+	private volatile long readSpeedTime;
+	private long windowStart;
+	private long windowSectors;
+	private ObjectName name;
+
+	/**
+	 * Creates the metrics for a drive.
+	 * @param device - the drive locator, null if the drive is found by searching.
+	 * @param paranoia - the wrapper used to read the drive.
+	 */
+	DriveMetrics(String device, CDDAParanoia paranoia) {
+		this.device = device == null ? "auto" : device;
+		this.paranoia = paranoia;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server and starts collecting the paranoia
+	 * statistics and read latencies.
+	 * @throws JMException - if the metrics cannot be registered, for example because the
+	 * metrics of another {@code CDDA} object for the same drive are registered.
+	 */
+	public synchronized void register() throws JMException {
+		if (name == null) {
+			ObjectName objectName = new ObjectName("cdutils:type=DriveMetrics,device="+ObjectName.quote(device));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			name = objectName;
+			paranoia.setStatisticsEnabled(true);
+		}
+	}
+
+	/**
+	 * Unregisters the metrics from the platform MBean server. The paranoia statistics and read
+	 * latencies stop being collected the next time the drive is opened, unless the read speed
+	 * is adaptive and needs them.
+	 * @throws JMException - if the metrics cannot be unregistered.
+	 */
+	public synchronized void unregister() throws JMException {
+		if (name != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = name;
+			name = null;
+			server.unregisterMBean(objectName);
+		}
+	}
+	
+	/**
+	 * Determines whether the metrics are registered.
+	 * @return True if the metrics are registered.
+	 */
+	synchronized boolean isRegistered() {
+		return name != null;
+	}
+
+	/**
+	 * Records the time taken to open the drive.
+	 */
+	void opened(long nanos) {
+		openNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Records the time taken to read the table of contents.
+	 */
+	void tocRead(long nanos) {
+		tocNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Records the time taken to seek.
+	 */
+	void seeked(long nanos) {
+		seekNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Records a read from the disc and updates the read speed once a second's worth of reads
+	 * has been seen. Only called by the thread reading the drive.
+	 */
+	void read(int sectors, long nanos) {
+		sectorsRead.addAndGet(sectors);
+		readNanos.addAndGet(nanos);
+		long now = System.nanoTime();
+		if (windowSectors == 0 || now - windowStart > 2*SPEED_WINDOW_NANOS) {
+			// the drive has been idle, start measuring from the start of this read
+			windowStart = now - nanos;
+			windowSectors = 0;
+		}
+		windowSectors += sectors;
+		long elapsed = now - windowStart;
+		if (elapsed >= SPEED_WINDOW_NANOS) {
+			readSpeed = windowSectors*(double) TimeUnit.SECONDS.toNanos(1)/elapsed/SECTORS_PER_SECOND;
+			readSpeedTime = now;
+			windowStart = now;
+			windowSectors = 0;
+		}
+	}
+
+	/**
+	 * Records a read from the disc that failed and ended a rip.
+	 */
+	void readFailed() {
+		readErrors.incrementAndGet();
+	}
+
+	/**
+	 * Sets the buffer of the track being streamed.
+	 * @param ring - the buffer, null once the track has been read.
+	 */
+	void setRing(SectorRing ring) {
+		this.ring = ring;
+	}
+
+	@Override
+	public String getDevice() {
+		return device;
+	}
+
+	@Override
+	public long getSectorsRead() {
+		return sectorsRead.get();
+	}
+
+	@Override
+	public double getReadSpeed() {
+		return System.nanoTime() - readSpeedTime > 2*SPEED_WINDOW_NANOS ? 0 : readSpeed;
+	}
+
+	@Override
+	public long getReadErrors() {
+		return readErrors.get();
+	}
+
+	@Override
+	public long getRetries() {
+		return paranoia.getReadErrors() - retriesBase;
+	}
+
+	@Override
+	public long getSkips() {
+		return paranoia.getSkips() - skipsBase;
+	}
+
+	@Override
+	public long getRepairs() {
+		return paranoia.getRepairs() - repairsBase;
+	}
+
+	@Override
+	public int getRingFillSectors() {
+		SectorRing r = ring;
+		return r == null ? 0 : r.available()/CDDAParanoia.cddaFrameSize;
+	}
+
+	@Override
+	public int getRingCapacitySectors() {
+		SectorRing r = ring;
+		return r == null ? 0 : r.capacity()/CDDAParanoia.cddaFrameSize;
+	}
+
+	@Override
+	public long getReadLatency50Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(paranoia.getReadLatency().getPercentile(0.5));
+	}
+
+	@Override
+	public long getReadLatency90Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(paranoia.getReadLatency().getPercentile(0.9));
+	}
+
+	@Override
+	public long getReadLatency99Micros() {
+		return TimeUnit.NANOSECONDS.toMicros(paranoia.getReadLatency().getPercentile(0.99));
+	}
+
+	@Override
+	public long getReadLatencyMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(paranoia.getReadLatency().getMax());
+	}
+
+	@Override
+	public long getOpenMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(openNanos.get());
+	}
+
+	@Override
+	public long getTocMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(tocNanos.get());
+	}
+
+	@Override
+	public long getSeekMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(seekNanos.get());
+	}
+
+	@Override
+	public long getReadMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(readNanos.get());
+	}
+
+	@Override
+	public void reset() {
+		sectorsRead.set(0);
+		readErrors.set(0);
+		openNanos.set(0);
+		tocNanos.set(0);
+		seekNanos.set(0);
+		readNanos.set(0);
+		retriesBase = paranoia.getReadErrors();
+		skipsBase = paranoia.getSkips();
+		repairsBase = paranoia.getRepairs();
+		paranoia.getReadLatency().clear();
+	}
+}
@@ -0,0 +1,123 @@
+package cdutils.service;
+
+/**
+ * <p>
+ * The JMX management interface of {@link DriveMetrics}, exposing the throughput, errors, 
+ * buffer health and timings of the rips from a drive.
+ * 
+ * @author ollie
+ *
+ */
+public interface DriveMetricsMBean {
+
+	/**
+	 * Gets the locator of the drive.
+	 * @return The drive locator.
+	 */
+	public String getDevice();
+	
+	/**
+	 * Gets the number of sectors read from the disc.
+	 * @return The number of sectors read.
+	 */
+	public long getSectorsRead();
+	
+	/**
+	 * Gets the current read speed as a multiple of the 1x audio CD rate of 75 sectors per 
+	 * second, measured over about the last second of reading.
+	 * @return The read speed, 0 if the drive is not being read.
+	 */
+	public double getReadSpeed();
+	
+	/**
+	 * Gets the number of reads that failed and ended a rip.
+	 * @return The number of failed reads.
+	 */
+	public long getReadErrors();
+	
+	/**
+	 * Gets the number of read errors reported by the drive to the paranoia library, each of 
+	 * which is retried.
+	 * @return The number of retries.
+	 */
+	public long getRetries();
+	
+	/**
+	 * Gets the number of sectors the paranoia library gave up on and skipped.
+	 * @return The number of skips.
+	 */
+	public long getSkips();
+	
+	/**
+	 * Gets the number of jitter corrections, scratch repairs and other fixes made by the 
+	 * paranoia library.
+	 * @return The number of repairs.
+	 */
+	public long getRepairs();
+	
+	/**
+	 * Gets the number of sectors read ahead of a track stream's caller and waiting in its 
+	 * buffer.
+	 * @return The number of buffered sectors, 0 if no track is being streamed.
+	 */
+	public int getRingFillSectors();
+	
+	/**
+	 * Gets the capacity of the buffer of the track being streamed.
+	 * @return The buffer capacity in sectors, 0 if no track is being streamed.
+	 */
+	public int getRingCapacitySectors();
+	
+	/**
+	 * Gets the median latency of the native library calls that read from the disc.
+	 * @return The latency in microseconds.
+	 */
+	public long getReadLatency50Micros();
+	
+	/**
+	 * Gets the 90th percentile latency of the native library calls that read from the disc.
+	 * @return The latency in microseconds.
+	 */
+	public long getReadLatency90Micros();
+	
+	/**
+	 * Gets the 99th percentile latency of the native library calls that read from the disc.
+	 * @return The latency in microseconds.
+	 */
+	public long getReadLatency99Micros();
+	
+	/**
+	 * Gets the largest latency of the native library calls that read from the disc.
+	 * @return The latency in microseconds.
+	 */
+	public long getReadLatencyMaxMicros();
+	
+	/**
+	 * Gets the total time spent opening the drive.
+	 * @return The time in milliseconds.
+	 */
+	public long getOpenMillis();
+	
+	/**
+	 * Gets the total time spent reading tables of contents.
+	 * @return The time in milliseconds.
+	 */
+	public long getTocMillis();
+	
+	/**
+	 * Gets the total time spent seeking.
+	 * @return The time in milliseconds.
+	 */
+	public long getSeekMillis();
+	
+	/**
+	 * Gets the total time spent reading audio.
+	 * @return The time in milliseconds.
+	 */
+	public long getReadMillis();
+	
+	/**
+	 * Sets all of the counts and times back to zero.
+	 */
+	public void reset();
+}
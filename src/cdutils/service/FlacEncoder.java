@@ -0,0 +1,245 @@
+package cdutils.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Encodes CD audio as a FLAC stream in process. Audio written to the encoder is cut into 
+ * blocks, and since FLAC frames are independent each block is encoded on a pool of threads
+ * while the caller carries on reading the disc. Finished frames are written to the output 
+ * in order as they become available.
+ * <p>
+ * The number of blocks waiting to be encoded is bounded, so if the encoder falls behind 
+ * the caller waits for the oldest frame. With the read ahead of the rip stream the drive 
+ * keeps reading while the caller waits.
+ * <p>
+ * The STREAMINFO block written at the start of the stream does not know the frame sizes 
+ * or the MD5 of the audio. When the output can be rewritten, the complete block from 
+ * {@link #getStreamInfo()} can be written over it at {@link #STREAMINFO_OFFSET} once the 
+ * encoder is finished.
+ * 
+ * @author ollie
+ *
+ */
+public class FlacEncoder {
+
+	/** The offset of the STREAMINFO metadata block in the stream. */
+	public static final int STREAMINFO_OFFSET = 4;
+	private static final int STREAMINFO_LENGTH = 38;
+	private static final int PENDING_PER_THREAD = 4;
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService sharedExecutor;
+	private static final ThreadLocal<FlacFrameEncoder> frameEncoders = new ThreadLocal<FlacFrameEncoder>() {
+		@Override
+		protected FlacFrameEncoder initialValue() {
+			return new FlacFrameEncoder();
+		}
+	};
+	private final OutputStream out;
+	private final ExecutorService executor;
+	private final long totalSamples;
+	private final MessageDigest md5;
+	private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+	private final int maxPending = THREADS*PENDING_PER_THREAD;
+	private byte[] block = new byte[FlacFrameEncoder.BLOCK_BYTES];
+	private int blockLength;
+	private long frameNumber;
+	private long samples;
+	private int minFrameSize = Integer.MAX_VALUE;
+	private int maxFrameSize;
+	private byte[] streamInfo;
+	
+	/**
+	 * Creates an encoder that encodes on a pool shared by all encoders, with a thread for 
+	 * each processor.
+	 * @param out - the stream to write the FLAC stream to.
+	 * @param totalSamples - the number of samples per channel that will be written, 0 if unknown.
+	 * @throws IOException if the stream header cannot be written.
+	 */
+	public FlacEncoder(OutputStream out, long totalSamples) throws IOException {
+		this(out, totalSamples, getSharedExecutor());
+	}
+	
+	/**
+	 * Creates an encoder that encodes on the given executor.
+	 * @param out - the stream to write the FLAC stream to.
+	 * @param totalSamples - the number of samples per channel that will be written, 0 if unknown.
+	 * @param executor - the executor to encode frames on.
+	 * @throws IOException if the stream header cannot be written.
+	 */
+	public FlacEncoder(OutputStream out, long totalSamples, ExecutorService executor) throws IOException {
+		this.out = out;
+		this.totalSamples = totalSamples;
+		this.executor = executor;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		out.write(new byte[] { 'f', 'L', 'a', 'C' });
+		out.write(streamInfo(0, 0, totalSamples, new byte[16]));
+	}
+	
+	/**
+	 * Writes 16 bit stereo little endian audio to the encoder.
+	 * @param data - the buffer holding the audio.
+	 * @param offset - the offset of the audio in the buffer.
+	 * @param length - the number of bytes to write.
+	 * @throws IOException if a frame cannot be encoded or written.
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException {
+		if (streamInfo != null) {
+			throw new IOException("Encoder is finished");
+		}
+		md5.update(data, offset, length);
+		while (length > 0) {
+			int count = Math.min(length, block.length - blockLength);
+			System.arraycopy(data, offset, block, blockLength, count);
+			blockLength += count;
+			offset += count;
+			length -= count;
+			if (blockLength == block.length) {
+				submit();
+			}
+		}
+		drain(false);
+	}
+	
+	/**
+	 * Writes all of the audio from the given stream to the encoder.
+	 * @param in - the stream to read, such as a track from {@link CD#getTrack(int)}.
+	 * @throws IOException if the stream cannot be read or a frame cannot be encoded or written.
+	 */
+	public void write(InputStream in) throws IOException {
+		byte[] buffer = new byte[FlacFrameEncoder.BLOCK_BYTES];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			write(buffer, 0, read);
+		}
+	}
+	
+	/**
+	 * Encodes any remaining audio and waits for every frame to be written.
+	 * @throws IOException if a frame cannot be encoded or written, or the audio was not whole samples.
+	 */
+	public void finish() throws IOException {
+		if (streamInfo != null) {
+			return;
+		}
+		if (blockLength % 4 != 0) {
+			throw new IOException("Audio ended part way through a sample");
+		}
+		if (blockLength > 0) {
+			submit();
+		}
+		drain(true);
+		out.flush();
+		if (totalSamples != 0 && totalSamples != samples) {
+			throw new IOException("Expected ["+totalSamples+"] samples but got ["+samples+"]");
+		}
+		streamInfo = streamInfo(minFrameSize == Integer.MAX_VALUE ? 0 : minFrameSize, maxFrameSize, samples, md5.digest());
+	}
+	
+	/**
+	 * Gets the complete STREAMINFO metadata block, including the frame sizes and MD5 of 
+	 * the audio, once the encoder is finished.
+	 * @return The STREAMINFO block, to be written at {@link #STREAMINFO_OFFSET}.
+	 */
+	public byte[] getStreamInfo() {
+		if (streamInfo == null) {
+			throw new IllegalStateException("Encoder is not finished");
+		}
+		return streamInfo.clone();
+	}
+	
+	private void submit() throws IOException {
+		final byte[] pcm = block;
+		final int length = blockLength;
+		final long number = frameNumber++;
+		samples += length/4;
+		block = new byte[FlacFrameEncoder.BLOCK_BYTES];
+		blockLength = 0;
+		if (pending.size() >= maxPending) {
+			writeFrame(pending.removeFirst());
+		}
+		pending.add(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return frameEncoders.get().encode(pcm, 0, length/4, number);
+			}
+		}));
+	}
+	
+	/**
+	 * Writes the frames at the head of the queue that are finished, or all of them.
+	 */
+	private void drain(boolean all) throws IOException {
+		while (!pending.isEmpty() && (all || pending.getFirst().isDone())) {
+			writeFrame(pending.removeFirst());
+		}
+	}
+	
+	private void writeFrame(Future<byte[]> future) throws IOException {
+		byte[] frame;
+		try {
+			frame = future.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted waiting for FLAC frame", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to encode FLAC frame", e.getCause());
+		}
+		out.write(frame);
+		minFrameSize = Math.min(minFrameSize, frame.length);
+		maxFrameSize = Math.max(maxFrameSize, frame.length);
+	}
+	
+	private static byte[] streamInfo(int minFrameSize, int maxFrameSize, long totalSamples, byte[] md5) {
+		byte[] b = new byte[STREAMINFO_LENGTH];
+		b[0] = (byte) 0x80;
+		b[3] = 34;
+		b[4] = (byte) (FlacFrameEncoder.BLOCK_SIZE >> 8);
+		b[5] = (byte) FlacFrameEncoder.BLOCK_SIZE;
+		b[6] = (byte) (FlacFrameEncoder.BLOCK_SIZE >> 8);
+		b[7] = (byte) FlacFrameEncoder.BLOCK_SIZE;
+		b[8] = (byte) (minFrameSize >> 16);
+		b[9] = (byte) (minFrameSize >> 8);
+		b[10] = (byte) minFrameSize;
+		b[11] = (byte) (maxFrameSize >> 16);
+		b[12] = (byte) (maxFrameSize >> 8);
+		b[13] = (byte) maxFrameSize;
+		// 20 bits of sample rate, 3 bits of channels-1, 5 bits of bits per sample-1, 36 bits of samples
+		long fields = (44100L << 44) | (1L << 41) | (15L << 36) | (totalSamples & 0xfffffffffL);
+		for (int i = 0; i < 8; i++) {
+			b[14+i] = (byte) (fields >> (56 - 8*i));
+		}
+		System.arraycopy(md5, 0, b, 22, 16);
+		return b;
+	}
+	
+	private static synchronized ExecutorService getSharedExecutor() {
+		if (sharedExecutor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			sharedExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "flac-encoder-"+count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+}
@@ -0,0 +1,104 @@
+package cdutils.service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.domain.TOCEntry;
+
+/**
+ * <p>
+ * A {@code TrackSink} that encodes each track to {@code trackNN.flac} in a directory with 
+ * a {@code FlacEncoder}. Once a track is complete the STREAMINFO block is rewritten with the 
+ * frame sizes and MD5 of the audio.
+ * 
+ * @author ollie
+ *
+ */
+public class FlacFileSink implements TrackSink {
+
+	private static final int BUFFER_SIZE = 64*1024;
+	private final File directory;
+	private RandomAccessFile file;
+	private OutputStream out;
+	private FlacEncoder encoder;
+	
+	/**
+	 * Constructs a sink that writes each track to the given directory.
+	 * @param directory - the directory to write the tracks to.
+	 */
+	public FlacFileSink(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Gets the file that a track is written to by a sink writing to the given directory.
+	 * @param directory - the directory.
+	 * @param track - the track id.
+	 * @return The track's file.
+	 */
+	public static File getTrackFile(File directory, int track) {
+		return new File(directory, String.format("track%02d.flac", track));
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.TrackSink#startTrack(cdutils.domain.TOCEntry)
+	 */
+	@Override
+	public void startTrack(TOCEntry track) throws IOException {
+		close();
+		file = new RandomAccessFile(getTrackFile(directory, track.getId()), "rw");
+		file.setLength(0);
+		out = new BufferedOutputStream(Channels.newOutputStream(file.getChannel()), BUFFER_SIZE);
+		encoder = new FlacEncoder(out, (long) track.getSectors()*CDDAParanoia.cddaFrameSize/4);
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.TrackSink#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		encoder.write(data, offset, length);
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.TrackSink#endTrack(cdutils.domain.TOCEntry)
+	 */
+	@Override
+	public void endTrack(TOCEntry track) throws IOException {
+		try {
+			encoder.finish();
+			out.flush();
+			FileChannel channel = file.getChannel();
+			ByteBuffer info = ByteBuffer.wrap(encoder.getStreamInfo());
+			long position = FlacEncoder.STREAMINFO_OFFSET;
+			while (info.hasRemaining()) {
+				position += channel.write(info, position);
+			}
+		} finally {
+			close();
+		}
+	}
+	
+	/**
+	 * Closes the current file, for use when a rip fails part way through.
+	 * @throws IOException if the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		if (file != null) {
+			try {
+				file.close();
+			} finally {
+				file = null;
+				out = null;
+				encoder = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,398 @@
+package cdutils.service;
+
+/**
+ * <p>
+ * Encodes one block of CD audio as a FLAC frame. Each channel is coded with whichever of 
+ * a constant, verbatim or fixed predictor subframe is smallest, with the residual Rice 
+ * coded in the best partitioning. The stereo decorrelation (left/right, left/side, 
+ * right/side or mid/side) that gives the smallest frame is used.
+ * <p>
+ * Instances hold working buffers and are not thread safe. Frames do not depend on each
+ * other, so any number of encoders can encode the blocks of a stream at once.
+ * 
+ * @author ollie
+ *
+ */
+final class FlacFrameEncoder {
+
+	/** The number of samples per channel in each block. */
+	static final int BLOCK_SIZE = 4096;
+	/** The number of bytes of CD audio in each block. */
+	static final int BLOCK_BYTES = BLOCK_SIZE*4;
+	private static final int BITS_PER_SAMPLE = 16;
+	private static final int MAX_FIXED_ORDER = 4;
+	private static final int MAX_PARTITION_ORDER = 8;
+	private static final int MAX_RICE_PARAMETER = 14;
+	private static final int CONSTANT = 0;
+	private static final int VERBATIM = 1;
+	private static final int FIXED = 8;
+	private static final int LEFT = 0;
+	private static final int RIGHT = 1;
+	private static final int MID = 2;
+	private static final int SIDE = 3;
+	private static final int INDEPENDENT = 1;
+	private static final int LEFT_SIDE = 8;
+	private static final int RIGHT_SIDE = 9;
+	private static final int MID_SIDE = 10;
+	private static final int[] CRC8 = new int[256];
+	private static final int[] CRC16 = new int[256];
+	private final int[][] channels = new int[4][BLOCK_SIZE];
+	private final int[] residual = new int[BLOCK_SIZE];
+	private final long[] sums = new long[1 << MAX_PARTITION_ORDER];
+	private final int[] types = new int[4];
+	private final int[] orders = new int[4];
+	private final long[] costs = new long[4];
+	private final BitWriter out = new BitWriter(BLOCK_BYTES + 64);
+	
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc8 = i;
+			int crc16 = i << 8;
+			for (int j = 0; j < 8; j++) {
+				crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+				crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+			}
+			CRC8[i] = crc8 & 0xff;
+			CRC16[i] = crc16 & 0xffff;
+		}
+	}
+	
+	/**
+	 * Encodes a block of 16 bit stereo little endian audio.
+	 * @param pcm - the buffer holding the audio.
+	 * @param offset - the offset of the audio in the buffer.
+	 * @param samples - the number of samples per channel, at most {@link #BLOCK_SIZE}.
+	 * @param frameNumber - the number of the frame in the stream.
+	 * @return The encoded frame.
+	 */
+	byte[] encode(byte[] pcm, int offset, int samples, long frameNumber) {
+		int[] left = channels[LEFT];
+		int[] right = channels[RIGHT];
+		int[] mid = channels[MID];
+		int[] side = channels[SIDE];
+		for (int i = 0, p = offset; i < samples; i++, p += 4) {
+			int l = (short) ((pcm[p] & 0xff) | (pcm[p+1] << 8));
+			int r = (short) ((pcm[p+2] & 0xff) | (pcm[p+3] << 8));
+			left[i] = l;
+			right[i] = r;
+			mid[i] = (l + r) >> 1;
+			side[i] = l - r;
+		}
+		for (int c = 0; c < 4; c++) {
+			plan(c, samples, c == SIDE ? BITS_PER_SAMPLE+1 : BITS_PER_SAMPLE);
+		}
+		int assignment = INDEPENDENT;
+		long best = costs[LEFT] + costs[RIGHT];
+		if (costs[LEFT] + costs[SIDE] < best) {
+			assignment = LEFT_SIDE;
+			best = costs[LEFT] + costs[SIDE];
+		}
+		if (costs[RIGHT] + costs[SIDE] < best) {
+			assignment = RIGHT_SIDE;
+			best = costs[RIGHT] + costs[SIDE];
+		}
+		if (costs[MID] + costs[SIDE] < best) {
+			assignment = MID_SIDE;
+		}
+		
+		out.reset();
+		out.write(0xfff8, 16);
+		out.write(samples == BLOCK_SIZE ? 12 : 7, 4);
+		out.write(9, 4);
+		out.write(assignment, 4);
+		out.write(4, 3);
+		out.write(0, 1);
+		writeFrameNumber(frameNumber);
+		if (samples != BLOCK_SIZE) {
+			out.write(samples-1, 16);
+		}
+		out.write(crc8(out.buffer(), out.length()), 8);
+		switch (assignment) {
+		  case LEFT_SIDE:
+			  writeSubframe(LEFT, samples, BITS_PER_SAMPLE);
+			  writeSubframe(SIDE, samples, BITS_PER_SAMPLE+1);
+			  break;
+		  case RIGHT_SIDE:
+			  writeSubframe(SIDE, samples, BITS_PER_SAMPLE+1);
+			  writeSubframe(RIGHT, samples, BITS_PER_SAMPLE);
+			  break;
+		  case MID_SIDE:
+			  writeSubframe(MID, samples, BITS_PER_SAMPLE);
+			  writeSubframe(SIDE, samples, BITS_PER_SAMPLE+1);
+			  break;
+		  default:
+			  writeSubframe(LEFT, samples, BITS_PER_SAMPLE);
+			  writeSubframe(RIGHT, samples, BITS_PER_SAMPLE);
+		}
+		out.align();
+		out.write(crc16(out.buffer(), out.length()), 16);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Chooses the subframe type for a channel and estimates its size in bits.
+	 */
+	private void plan(int channel, int samples, int bps) {
+		int[] x = channels[channel];
+		boolean constant = true;
+		for (int i = 1; i < samples && constant; i++) {
+			constant = x[i] == x[0];
+		}
+		if (constant) {
+			types[channel] = CONSTANT;
+			costs[channel] = 8 + bps;
+			return;
+		}
+		int order = 0;
+		long bestSum = Long.MAX_VALUE;
+		for (int o = 0; o <= Math.min(MAX_FIXED_ORDER, samples-1); o++) {
+			long sum = 0;
+			for (int i = o; i < samples; i++) {
+				sum += Math.abs(predict(x, i, o));
+			}
+			if (sum < bestSum) {
+				bestSum = sum;
+				order = o;
+			}
+		}
+		long fixed = 8 + (long) order*bps + residualBits(x, samples, order, false);
+		long verbatim = 8 + (long) bps*samples;
+		if (fixed < verbatim) {
+			types[channel] = FIXED;
+			orders[channel] = order;
+			costs[channel] = fixed;
+		} else {
+			types[channel] = VERBATIM;
+			costs[channel] = verbatim;
+		}
+	}
+	
+	private void writeSubframe(int channel, int samples, int bps) {
+		int[] x = channels[channel];
+		switch (types[channel]) {
+		  case CONSTANT:
+			  out.write(CONSTANT << 1, 8);
+			  out.write(x[0], bps);
+			  break;
+		  case VERBATIM:
+			  out.write(VERBATIM << 1, 8);
+			  for (int i = 0; i < samples; i++) {
+				  out.write(x[i], bps);
+			  }
+			  break;
+		  default:
+			  int order = orders[channel];
+			  out.write((FIXED | order) << 1, 8);
+			  for (int i = 0; i < order; i++) {
+				  out.write(x[i], bps);
+			  }
+			  residualBits(x, samples, order, true);
+		}
+	}
+	
+	/**
+	 * Calculates the residual of a fixed predictor and finds the partitioning and Rice 
+	 * parameters that code it in the fewest bits, writing the coded residual if asked to.
+	 * @return The estimated size of the coded residual in bits.
+	 */
+	private long residualBits(int[] x, int samples, int order, boolean write) {
+		for (int i = order; i < samples; i++) {
+			residual[i] = predict(x, i, order);
+		}
+		int maxOrder = 0;
+		while (maxOrder < MAX_PARTITION_ORDER && (samples >> (maxOrder+1)) << (maxOrder+1) == samples 
+				&& (samples >> (maxOrder+1)) > order) {
+			maxOrder++;
+		}
+		int partitions = 1 << maxOrder;
+		int size = samples >> maxOrder;
+		for (int p = 0; p < partitions; p++) {
+			long sum = 0;
+			for (int i = Math.max(p*size, order); i < (p+1)*size; i++) {
+				int r = residual[i];
+				sum += (r << 1) ^ (r >> 31);
+			}
+			sums[p] = sum;
+		}
+		long bestBits = Long.MAX_VALUE;
+		int bestOrder = maxOrder;
+		for (int po = maxOrder; po >= 0; po--) {
+			int count = 1 << po;
+			long bits = 0;
+			for (int p = 0; p < count; p++) {
+				int n = (samples >> po) - (p == 0 ? order : 0);
+				bits += 4 + riceBits(sums[p], n);
+			}
+			if (bits < bestBits) {
+				bestBits = bits;
+				bestOrder = po;
+			}
+			if (po > 0) {
+				for (int p = 0; p < count/2; p++) {
+					sums[p] = sums[2*p] + sums[2*p+1];
+				}
+			}
+		}
+		if (write) {
+			// recompute the sums for the chosen order, the merge above has overwritten them
+			int count = 1 << bestOrder;
+			size = samples >> bestOrder;
+			out.write(0, 2);
+			out.write(bestOrder, 4);
+			for (int p = 0; p < count; p++) {
+				int start = Math.max(p*size, order);
+				long sum = 0;
+				for (int i = start; i < (p+1)*size; i++) {
+					int r = residual[i];
+					sum += (r << 1) ^ (r >> 31);
+				}
+				int k = riceParameter(sum, (p+1)*size - start);
+				out.write(k, 4);
+				for (int i = start; i < (p+1)*size; i++) {
+					int r = residual[i];
+					out.writeRice((r << 1) ^ (r >> 31), k);
+				}
+			}
+		}
+		return 6 + bestBits;
+	}
+	
+	/**
+	 * Finds the Rice parameter that codes a partition in the fewest bits, estimated from the
+	 * sum of its folded residuals.
+	 */
+	private static int riceParameter(long sum, int n) {
+		int best = 0;
+		for (int k = 1; k <= MAX_RICE_PARAMETER; k++) {
+			if ((long) n*(k+1) + (sum >> k) < (long) n*(best+1) + (sum >> best)) {
+				best = k;
+			}
+		}
+		return best;
+	}
+	
+	private static long riceBits(long sum, int n) {
+		int k = riceParameter(sum, n);
+		return (long) n*(k+1) + (sum >> k);
+	}
+	
+	private static int predict(int[] x, int i, int order) {
+		switch (order) {
+		  case 0:
+			  return x[i];
+		  case 1:
+			  return x[i] - x[i-1];
+		  case 2:
+			  return x[i] - 2*x[i-1] + x[i-2];
+		  case 3:
+			  return x[i] - 3*x[i-1] + 3*x[i-2] - x[i-3];
+		  default:
+			  return x[i] - 4*x[i-1] + 6*x[i-2] - 4*x[i-3] + x[i-4];
+		}
+	}
+	
+	private void writeFrameNumber(long value) {
+		if (value < 0x80) {
+			out.write((int) value, 8);
+			return;
+		}
+		int bytes = 2;
+		while (bytes < 7 && value >= 1L << (5*bytes + 1)) {
+			bytes++;
+		}
+		out.write((int) (((0xff00 >> bytes) & 0xff) | (value >> (6*(bytes-1)))), 8);
+		for (int i = bytes-2; i >= 0; i--) {
+			out.write((int) (0x80 | ((value >> (6*i)) & 0x3f)), 8);
+		}
+	}
+	
+	private static int crc8(byte[] data, int length) {
+		int crc = 0;
+		for (int i = 0; i < length; i++) {
+			crc = CRC8[(crc ^ data[i]) & 0xff];
+		}
+		return crc;
+	}
+	
+	private static int crc16(byte[] data, int length) {
+		int crc = 0;
+		for (int i = 0; i < length; i++) {
+			crc = ((crc << 8) ^ CRC16[((crc >> 8) ^ data[i]) & 0xff]) & 0xffff;
+		}
+		return crc;
+	}
+	
+	/**
+	 * Writes big endian bit fields into a growing buffer.
+	 */
+	private static class BitWriter {
+		
+		private byte[] buffer;
+		private int length;
+		private long bits;
+		private int count;
+		
+		BitWriter(int capacity) {
+			buffer = new byte[capacity];
+		}
+		
+		void reset() {
+			length = 0;
+			count = 0;
+			bits = 0;
+		}
+		
+		/**
+		 * Writes the low {@code n} bits of the value, {@code n} is at most 32.
+		 */
+		void write(int value, int n) {
+			bits = (bits << n) | (value & (0xffffffffL >>> (32 - n)));
+			count += n;
+			if (length + 8 > buffer.length) {
+				byte[] grown = new byte[buffer.length*2];
+				System.arraycopy(buffer, 0, grown, 0, length);
+				buffer = grown;
+			}
+			while (count >= 8) {
+				count -= 8;
+				buffer[length++] = (byte) (bits >> count);
+			}
+		}
+		
+		void writeRice(int value, int k) {
+			int q = value >>> k;
+			if (q + 1 + k <= 32) {
+				write((1 << k) | (value & ((1 << k) - 1)), q + 1 + k);
+			} else {
+				while (q >= 32) {
+					write(0, 32);
+					q -= 32;
+				}
+				write(1, q + 1);
+				if (k > 0) {
+					write(value, k);
+				}
+			}
+		}
+		
+		void align() {
+			if (count > 0) {
+				write(0, 8 - count);
+			}
+		}
+		
+		byte[] buffer() {
+			return buffer;
+		}
+		
+		int length() {
+			return length;
+		}
+		
+		byte[] toByteArray() {
+			byte[] b = new byte[length];
+			System.arraycopy(buffer, 0, b, 0, length);
+			return b;
+		}
+	}
+}
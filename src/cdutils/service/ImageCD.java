@@ -0,0 +1,511 @@
+package cdutils.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.dao.DiscIdCalculator;
+import cdutils.domain.DiscInfo;
+import cdutils.domain.ReadMode;
+import cdutils.domain.RipProgressEvent;
+import cdutils.domain.TOC;
+import cdutils.domain.TOCEntry;
+import cdutils.exception.DiscReadException;
+import ollie.utils.logging.LogProvider;
+
+/**
+ * <p>
+ * A {@code CD} backed by a disc image rather than a CDROM drive. The image is either a CUE 
+ * sheet with its BIN or WAVE files or a single raw image of 2352 byte sectors, which is 
+ * treated as one track. The audio in the image files is memory mapped when first needed, in 
+ * windows of up to 2 GB, so tracks are read at the speed of the disk holding the image and 
+ * no native libraries are required.
+ * 
+ * @author ollie
+ *
+ */
+@LogProvider
+public class ImageCD implements CD {
+
+	private static final int FRAMES_PER_READ = 32;
+	/** The most sectors mapped by one buffer, which is limited to 2 GB. */
+	private static final int MAP_SECTORS = Integer.MAX_VALUE/CDDAParanoia.cddaFrameSize;
+	private static final String WEB_SERVICE_URL = "http://mm.musicbrainz.org/ws/1/release?type=xml&discid=";
+	private final Log logger;
+	private final File image;
+	private CueSheet sheet;
+	private ByteBuffer[] mapped;
+	private int[] mappedSectors;
+	private DiscInfo discInfo;
+	private final Map<Integer, AccurateRipChecksum> checksums = new ConcurrentHashMap<Integer, AccurateRipChecksum>();
+	private volatile boolean terminated;
+	private final AudioFormat cddaFormat = new AudioFormat(
+		AudioFormat.Encoding.PCM_SIGNED,
+		44100.0F, 16, 2, 4, 44100.0F, false);
+	
+	/**
+	 * Constructs a new {@code ImageCD} for the given image. The image is not read until it is 
+	 * first needed.
+	 * @param image - a CUE sheet (ending {@code .cue}) or a raw image.
+	 */
+	public ImageCD(File image) {
+		this.image = image;
+		logger = LogFactory.getLog(getClass());
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getTableOfContents()
+	 */
+	@Override
+	public TOC getTableOfContents() throws DiscReadException {
+		return getSheet().getTableOfContents();
+	}
+
+	/**
+	 * Releases the mapped image, there is nothing to eject.
+	 * @return Always false.
+	 */
+	@Override
+	public boolean eject() {
+		cancel();
+		synchronized (this) {
+			sheet = null;
+			mapped = null;
+			mappedSectors = null;
+			discInfo = null;
+		}
+		checksums.clear();
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getCDDBId()
+	 */
+	@Override
+	public String getCDDBId() throws DiscReadException {
+		return getDiscInfo().getFreeDbId();
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getMusicBrainzDiscId()
+	 */
+	@Override
+	public String getMusicBrainzDiscId() throws DiscReadException {
+		return getDiscInfo().getMusicBrainzDiscId();
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getMusicBrainzURL()
+	 */
+	@Override
+	public String getMusicBrainzURL() throws DiscReadException {
+		return getDiscInfo().getWebServiceURL();
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getDiscInfo()
+	 */
+	@Override
+	public synchronized DiscInfo getDiscInfo() throws DiscReadException {
+		if (discInfo == null) {
+			DiscInfo info = new DiscIdCalculator().getDiscInfo(getTableOfContents());
+			StringBuilder url = new StringBuilder(WEB_SERVICE_URL).append(info.getMusicBrainzDiscId())
+					.append("&toc=").append(info.getFirstTrack()).append('+').append(info.getLastTrack())
+					.append('+').append(info.getSectors());
+			for (int track = info.getFirstTrack(); track <= info.getLastTrack(); track++) {
+				url.append('+').append(info.getTrackOffset(track));
+			}
+			info.setWebServiceURL(url.toString());
+			discInfo = info;
+		}
+		return discInfo;
+	}
+
+	/**
+	 * Determines whether the image exists.
+	 * @return True if the image file exists.
+	 */
+	@Override
+	public boolean isDiscInDrive() {
+		return image.isFile();
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getTrack(int)
+	 */
+	@Override
+	public AudioInputStream getTrack(int track) throws DiscReadException {
+		return getTrack(track, (RipProgressListener) null);
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getTrack(int, java.io.OutputStream)
+	 */
+	@Override
+	public void getTrack(int track, OutputStream output) throws DiscReadException {
+		getTrack(track, null, output);
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getTrack(int, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public AudioInputStream getTrack(int track, RipProgressListener listener) throws DiscReadException {
+		TOCEntry ent = getEntry(track);
+		terminated = false;
+		return new AudioInputStream(new ImageInputStream(ent, listener), cddaFormat, 
+				(long) ent.getSectors()*CDDAParanoia.cddaFrameSize/cddaFormat.getFrameSize());
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#getTrack(int, cdutils.service.RipProgressListener, java.io.OutputStream)
+	 */
+	@Override
+	public void getTrack(int track, RipProgressListener listener, OutputStream output) throws DiscReadException {
+		TOCEntry ent = getEntry(track);
+		terminated = false;
+		InputStream in = new ImageInputStream(ent, listener);
+		byte[] buffer = new byte[FRAMES_PER_READ*CDDAParanoia.cddaFrameSize];
+		try {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				output.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw ripError(e, listener);
+		}
+	}
+
+	/**
+	 * Writes the track to the channel straight from the mapped image.
+	 * @see cdutils.service.CD#getTrack(int, cdutils.service.RipProgressListener, java.nio.channels.WritableByteChannel)
+	 */
+	@Override
+	public void getTrack(int track, RipProgressListener listener, WritableByteChannel output) throws DiscReadException {
+		TOCEntry ent = getEntry(track);
+		terminated = false;
+		long length = (long) ent.getSectors()*CDDAParanoia.cddaFrameSize;
+		long written = 0;
+		int progress = -1;
+		try {
+			for (ByteBuffer region : getRegions(ent)) {
+				while (region.hasRemaining()) {
+					if (terminated) {
+						throw new IOException("Rip cancelled.");
+					}
+					written += output.write(region);
+					int percent = (int) ((written*100)/length);
+					if (listener != null && percent != progress) {
+						progress = percent;
+						listener.onRipProgressEvent(new RipProgressEvent(this, percent));
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw ripError(e, listener);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#ripDisc(cdutils.service.TrackSink, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public void ripDisc(TrackSink sink, RipProgressListener listener) throws DiscReadException {
+		logger.info("Starting rip of whole image ["+image+"]");
+		terminated = false;
+		List<TOCEntry> entries = getTableOfContents().entries();
+		byte[] buffer = new byte[FRAMES_PER_READ*CDDAParanoia.cddaFrameSize];
+		try {
+			for (TOCEntry ent : entries) {
+				InputStream in = new ImageInputStream(ent, null);
+				sink.startTrack(ent);
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					sink.write(buffer, 0, read);
+				}
+				sink.endTrack(ent);
+				if (listener != null) {
+					listener.onRipProgressEvent(new RipProgressEvent(this, (ent.getId()*100)/entries.get(entries.size()-1).getId()));
+				}
+			}
+		} catch (IOException e) {
+			throw ripError(e, listener);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#ripImage(java.io.File, java.io.File, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public void ripImage(File image, File cue, RipProgressListener listener) throws DiscReadException {
+		ImageRipper.rip(this, image, cue, listener);
+	}
+	
+	/**
+	 * Writes the track to a wave file. Reading an image cannot be interrupted part way through
+	 * a sector, so no journal is kept and the whole track is written each time.
+	 * @see cdutils.service.CD#ripTrack(int, java.io.File, cdutils.service.RipProgressListener)
+	 */
+	@Override
+	public void ripTrack(int track, File output, RipProgressListener listener) throws DiscReadException {
+		TOCEntry ent = getEntry(track);
+		terminated = false;
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(output, "rw");
+			FileChannel channel = file.getChannel();
+			ByteBuffer[] regions = getRegions(ent);
+			long length = (long) ent.getSectors()*CDDAParanoia.cddaFrameSize;
+			file.setLength(WaveHeader.RIFF_LENGTH + length);
+			long position = 0;
+			ByteBuffer header = WaveHeader.riff(length);
+			while (header.hasRemaining()) {
+				position += channel.write(header, position);
+			}
+			int progress = -1;
+			for (ByteBuffer region : regions) {
+				while (region.hasRemaining()) {
+					if (terminated) {
+						throw new IOException("Rip cancelled.");
+					}
+					position += channel.write(region, position);
+					int percent = (int) (((position - WaveHeader.RIFF_LENGTH)*100)/length);
+					if (listener != null && percent != progress) {
+						progress = percent;
+						listener.onRipProgressEvent(new RipProgressEvent(this, percent));
+					}
+				}
+			}
+			file.close();
+			file = null;
+		} catch (IOException e) {
+			throw ripError(e, listener);
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+					logger.warn("Failed to close ["+output+"]", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the AccurateRip checksums of the given track, calculated from the image when first asked for.
+	 * @see cdutils.service.CD#getAccurateRipChecksum(int)
+	 */
+	@Override
+	public AccurateRipChecksum getAccurateRipChecksum(int track) {
+		AccurateRipChecksum checksum = checksums.get(track);
+		if (checksum == null) {
+			try {
+				List<TOCEntry> entries = getTableOfContents().entries();
+				TOCEntry ent = getEntry(track);
+				checksum = new AccurateRipChecksum(track, ent.getSectors(), 
+						ent == entries.get(0), ent == entries.get(entries.size()-1));
+				byte[] buffer = new byte[FRAMES_PER_READ*CDDAParanoia.cddaFrameSize];
+				for (ByteBuffer region : getRegions(ent)) {
+					while (region.hasRemaining()) {
+						int length = Math.min(buffer.length, region.remaining());
+						region.get(buffer, 0, length);
+						checksum.update(buffer, 0, length);
+					}
+				}
+				checksums.put(track, checksum);
+			} catch (DiscReadException e) {
+				logger.error("Unable to calculate AccurateRip checksum for track ["+track+"]", e);
+				return null;
+			}
+		}
+		return checksum;
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.CD#cancel()
+	 */
+	@Override
+	public void cancel() {
+		terminated = true;
+	}
+
+	@Override
+	public void setVerbose() {
+	}
+
+	/**
+	 * Images hold audio that has already been extracted, so the read mode is ignored.
+	 * @see cdutils.service.CD#setReadMode(cdutils.domain.ReadMode)
+	 */
+	@Override
+	public void setReadMode(ReadMode readMode) {
+	}
+
+	@Override
+	public String getLibraryVersions() {
+		return "Disc image ["+image+"]";
+	}
+	
+	private synchronized CueSheet getSheet() throws DiscReadException {
+		if (sheet == null) {
+			try {
+				sheet = image.getName().toLowerCase().endsWith(".cue") ? CueSheet.read(image) : CueSheet.raw(image);
+			} catch (IOException e) {
+				throw new DiscReadException(e);
+			}
+			logger.info("Got table of contents:\n"+sheet.getTableOfContents().toString());
+		}
+		return sheet;
+	}
+	
+	private TOCEntry getEntry(int track) throws DiscReadException {
+		for (TOCEntry ent : getTableOfContents().entries()) {
+			if (ent.getId() == track) {
+				return ent;
+			}
+		}
+		throw new IllegalArgumentException("Track ["+track+"] is an invalid track no");
+	}
+	
+	/**
+	 * Maps the audio in every file of the image, once. A file with more audio than a buffer 
+	 * can hold is mapped in several windows.
+	 */
+	private synchronized void map() throws DiscReadException {
+		if (mapped == null) {
+			CueSheet cue = getSheet();
+			List<File> files = cue.getFiles();
+			List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+			List<Integer> sectors = new ArrayList<Integer>();
+			try {
+				for (int i = 0; i < files.size(); i++) {
+					RandomAccessFile file = new RandomAccessFile(files.get(i), "r");
+					try {
+						int total = (int) (cue.getFileLength(i)/CDDAParanoia.cddaFrameSize);
+						for (int done = 0; done < total; done += MAP_SECTORS) {
+							int count = Math.min(MAP_SECTORS, total - done);
+							buffers.add(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 
+									cue.getFileOffset(i) + (long) done*CDDAParanoia.cddaFrameSize, 
+									(long) count*CDDAParanoia.cddaFrameSize));
+							sectors.add(cue.getFileSector(i) + done);
+						}
+					} finally {
+						file.close();
+					}
+				}
+			} catch (IOException e) {
+				throw new DiscReadException(e);
+			}
+			mappedSectors = new int[sectors.size()];
+			for (int i = 0; i < mappedSectors.length; i++) {
+				mappedSectors[i] = sectors.get(i);
+			}
+			mapped = buffers.toArray(new ByteBuffer[buffers.size()]);
+		}
+	}
+	
+	/**
+	 * Gets views of the mapped image covering the given track, one for each mapped window the 
+	 * track spans. Each view has its own position, so several tracks can be read at once.
+	 */
+	private ByteBuffer[] getRegions(TOCEntry ent) throws DiscReadException {
+		ByteBuffer[] buffers;
+		int[] firstSectors;
+		synchronized (this) {
+			map();
+			buffers = mapped;
+			firstSectors = mappedSectors;
+		}
+		int spanned = 0;
+		ByteBuffer[] regions = new ByteBuffer[buffers.length];
+		for (int i = 0; i < buffers.length; i++) {
+			int first = firstSectors[i];
+			int last = first + buffers[i].capacity()/CDDAParanoia.cddaFrameSize - 1;
+			if (ent.getFirstSector() <= last && ent.getLastSector() >= first) {
+				ByteBuffer region = buffers[i].duplicate();
+				region.limit((Math.min(last, ent.getLastSector()) - first + 1)*CDDAParanoia.cddaFrameSize);
+				region.position((Math.max(first, ent.getFirstSector()) - first)*CDDAParanoia.cddaFrameSize);
+				regions[spanned++] = region;
+			}
+		}
+		ByteBuffer[] result = new ByteBuffer[spanned];
+		System.arraycopy(regions, 0, result, 0, spanned);
+		return result;
+	}
+	
+	private DiscReadException ripError(IOException e, RipProgressListener listener) {
+		logger.error("Error reading image ["+image+"]", e);
+		if (listener != null) {
+			listener.onError(e.getMessage());
+		}
+		return new DiscReadException(e);
+	}
+	
+	/**
+	 * Reads a track from the mapped regions of the image, informing the listener of progress.
+	 */
+	private class ImageInputStream extends InputStream {
+		
+		final ByteBuffer[] regions;
+		final RipProgressListener listener;
+		final long total;
+		long read;
+		int region;
+		int progress = -1;
+		
+		ImageInputStream(TOCEntry ent, RipProgressListener listener) throws DiscReadException {
+			this.regions = getRegions(ent);
+			this.listener = listener;
+			total = (long) ent.getSectors()*CDDAParanoia.cddaFrameSize;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (terminated) {
+				throw new IOException("Rip cancelled.");
+			}
+			while (region < regions.length && !regions[region].hasRemaining()) {
+				region++;
+			}
+			if (region == regions.length) {
+				return -1;
+			}
+			int length = Math.min(len, regions[region].remaining());
+			regions[region].get(b, off, length);
+			read += length;
+			int percent = (int) ((read*100)/total);
+			if (listener != null && percent != progress) {
+				progress = percent;
+				listener.onRipProgressEvent(new RipProgressEvent(ImageCD.this, percent));
+			}
+			return length;
+		}
+		
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, total - read);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package cdutils.service;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.logging.LogFactory;
+
+import cdutils.domain.TOC;
+import cdutils.exception.DiscReadException;
+import ollie.utils.logging.LogProvider;
+
+/**
+ * <p>
+ * Rips a whole disc to a single image file with a CUE sheet. The disc is read with 
+ * {@link CD#ripDisc(TrackSink, RipProgressListener)}, which reads from the first to the 
+ * last audio sector in one pass, into a {@code WaveFileSink} writing one file. The format
+ * of the file is chosen by its extension: {@code .wav} for a wave file, given a Wave64 header
+ * if it is over 4 GB, {@code .w64} for a Wave64 file and {@code .bin} for raw sectors.
+ * 
+ * @author ollie
+ *
+ */
+@LogProvider
+final class ImageRipper {
+
+	private ImageRipper() {
+	}
+	
+	/**
+	 * @see CD#ripImage(File, File, RipProgressListener)
+	 */
+	static void rip(CD cd, File image, File cue, RipProgressListener listener) throws DiscReadException {
+		String name = image.getName().toLowerCase();
+		boolean w64 = name.endsWith(".w64");
+		boolean wave = w64 || name.endsWith(".wav");
+		if (!wave && !name.endsWith(".bin")) {
+			throw new IllegalArgumentException("Image ["+image+"] must be a .wav, .w64 or .bin file");
+		}
+		TOC toc = cd.getTableOfContents();
+		WaveFileSink sink = new WaveFileSink(image, toc, wave, w64);
+		boolean ripped = false;
+		try {
+			cd.ripDisc(sink, listener);
+			ripped = true;
+		} finally {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				if (ripped) {
+					throw new DiscReadException(e);
+				}
+				// the rip has already failed, its error is the one to report
+				LogFactory.getLog(ImageRipper.class).warn("Failed to close ["+image+"]", e);
+			}
+		}
+		try {
+			CueSheet.forImage(image, toc, wave).write(cue);
+		} catch (IOException e) {
+			throw new DiscReadException(e);
+		}
+	}
+}
@@ -2,9 +2,6 @@ package cdutils.service;
 
 import java.io.File;
 
-import javax.sound.sampled.AudioFileFormat.Type;
-import javax.sound.sampled.AudioSystem;
-
 import cdutils.domain.RipProgressEvent;
 
 /**
@@ -19,7 +16,8 @@ public class Main {
 
 	/**
 	 * Main method for test programme. Takes two arguments, argument 0 is the
-	 * CDROM device locator string. Argument 1 is the id of the track to rip.
+	 * CDROM device locator string. Argument 1 is the id of the track to rip, 
+	 * or {@code all} to rip every track.
 	 * If the argument 1 is not supplied then the programme just prints out
 	 * the table of contents.
 	 * @param args - args[0] = device args[1] track to rip.
@@ -31,9 +29,12 @@ public class Main {
 		System.out.println("CD Utils versions - "+cd.getLibraryVersions());
 		long start = System.currentTimeMillis();
 		if (args.length > 1) {
-			File f = new File("test"+args[1]+".wav");
-			f.setWritable(true);
-			AudioSystem.write(cd.getTrack(Integer.valueOf(args[1]), new PL()), Type.WAVE, f);
+			if (args[1].equals("all")) {
+				cd.ripDisc(new WaveFileSink(new File(".")), new PL());
+			} else {
+				File f = new File("test"+args[1]+".wav");
+				cd.ripTrack(Integer.valueOf(args[1]), f, new PL());
+			}
 			long dur = System.currentTimeMillis()-start;
 			int secs = (int) dur/1000;
 			System.out.println(String.format("Total rip time %02d:%02d", (secs/60), (secs%60)));
@@ -0,0 +1,82 @@
+package cdutils.service;
+
+/**
+ * <p>
+ * A fixed size ring of diagnostic events recorded while ripping. Recording an event only 
+ * stores primitive values, so it is cheap enough to be done for every read from the disc.
+ * The ring is only rendered into text when {@link #toString()} is called, for example when 
+ * an error occurs or when the diagnostics are requested by the user.
+ * 
+ * @author ollie
+ *
+ */
+public class RipDiagnostics {
+
+	public static final int SEEK = 0;
+	public static final int READ = 1;
+	public static final int READ_ERROR = 2;
+	public static final int TERMINATED = 3;
+	public static final int COMPLETE = 4;
+	private static final String[] NAMES = {"SEEK", "READ", "READ_ERROR", "TERMINATED", "COMPLETE"};
+	
+	private final long[] times;
+	private final int[] events;
+	private final int[] sectors;
+	private final int[] values;
+	private long count;
+	
+	/**
+	 * Creates a new {@code RipDiagnostics} ring holding the given number of events.
+	 * @param capacity - the maximum number of events held, older events are overwritten.
+	 */
+	public RipDiagnostics(int capacity) {
+		times = new long[capacity];
+		events = new int[capacity];
+		sectors = new int[capacity];
+		values = new int[capacity];
+	}
+	
+	/**
+	 * Records an event in the ring.
+	 * @param event - the event type.
+	 * @param sector - the sector the event relates to.
+	 * @param value - an event specific value, such as the number of frames read.
+	 */
+	public synchronized void record(int event, int sector, int value) {
+		int i = (int) (count++ % times.length);
+		times[i] = System.nanoTime();
+		events[i] = event;
+		sectors[i] = sector;
+		values[i] = value;
+	}
+	
+	/**
+	 * Gets the total number of events recorded, including those that have been overwritten.
+	 * @return The number of events recorded.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Removes all events from the ring.
+	 */
+	public synchronized void clear() {
+		count = 0;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("Rip diagnostics ("+count+" events)\n\nTime (us)\tEvent\tSector\tValue\n");
+		long start = Math.max(0, count - times.length);
+		long base = count > 0 ? times[(int) (start % times.length)] : 0;
+		for (long n = start; n < count; n++) {
+			int i = (int) (n % times.length);
+			sb.append((times[i] - base)/1000).append('\t');
+			sb.append(NAMES[events[i]]).append('\t');
+			sb.append(sectors[i]).append('\t');
+			sb.append(values[i]).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,106 @@
+package cdutils.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A request to rip a whole disc, submitted to a {@link RipScheduler}. The job holds the sink 
+ * that will receive the disc's tracks and records the outcome once a drive has processed it.
+ * A job is not tied to a drive, it rips the disc in whichever drive takes it from the queue.
+ * 
+ * @author ollie
+ *
+ */
+public class RipJob {
+
+	private final TrackSink sink;
+	private final RipProgressListener listener;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile CD drive;
+	private volatile Exception error;
+	private volatile long bytes;
+	private volatile long duration;
+	
+	/**
+	 * Creates a new job ripping to the given sink.
+	 * @param sink - the sink receiving the tracks.
+	 * @param listener - a progress listener, may be null.
+	 */
+	public RipJob(TrackSink sink, RipProgressListener listener) {
+		this.sink = sink;
+		this.listener = listener;
+	}
+	
+	public TrackSink getSink() {
+		return sink;
+	}
+	
+	public RipProgressListener getListener() {
+		return listener;
+	}
+	
+	/**
+	 * Gets the drive that processed this job.
+	 * @return The drive, or null if the job has not started.
+	 */
+	public CD getDrive() {
+		return drive;
+	}
+	
+	/**
+	 * Gets the error that caused the job to fail.
+	 * @return The error, or null if the job has not failed.
+	 */
+	public Exception getError() {
+		return error;
+	}
+	
+	/**
+	 * Gets the number of bytes of audio ripped by this job.
+	 * @return The number of bytes ripped.
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * Gets the time the job took to run in milliseconds.
+	 * @return The job duration.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+	
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+	
+	/**
+	 * Waits for the job to complete.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void waitFor() throws InterruptedException {
+		done.await();
+	}
+	
+	/**
+	 * Waits for the job to complete for at most the given time.
+	 * @return True if the job completed.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+		return done.await(timeout, unit);
+	}
+	
+	void started(CD drive) {
+		this.drive = drive;
+	}
+	
+	void finished(long bytes, long duration, Exception error) {
+		this.bytes = bytes;
+		this.duration = duration;
+		this.error = error;
+		done.countDown();
+	}
+}
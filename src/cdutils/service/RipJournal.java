@@ -0,0 +1,132 @@
+package cdutils.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.domain.TOCEntry;
+
+/**
+ * <p>
+ * Records the ranges of sectors of a track that have been written to an output file, along
+ * with a CRC32 of each range, so that an interrupted rip can carry on from the first sector 
+ * that was not written. The journal is a small text file kept next to the output file and is 
+ * deleted once the track has been ripped.
+ * <p>
+ * The first line of the journal identifies the track, each following line holds the first 
+ * sector, sector count and CRC32 of a completed range.
+ * 
+ * @author ollie
+ *
+ */
+public class RipJournal {
+
+	private static final String SUFFIX = ".journal";
+	private final File file;
+	
+	/**
+	 * Creates a journal for the given output file.
+	 * @param output - the file the track is being ripped to.
+	 */
+	public RipJournal(File output) {
+		file = new File(output.getPath()+SUFFIX);
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Reads the journal and checks each recorded range against the data already in the output,
+	 * then rewrites the journal so that it only holds the ranges that were verified. 
+	 * @param track - the track being ripped.
+	 * @param output - the output file's channel.
+	 * @param dataOffset - the position of the track's first sector in the output file.
+	 * @return The number of sectors from the start of the track that can be kept.
+	 * @throws IOException if the journal or output cannot be read, or the journal cannot be rewritten.
+	 */
+	public int resume(TOCEntry track, FileChannel output, long dataOffset) throws IOException {
+		StringBuilder verified = new StringBuilder(header(track));
+		int sectors = 0;
+		if (file.exists()) {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				if (header(track).trim().equals(reader.readLine())) {
+					ByteBuffer buffer = null;
+					CRC32 crc = new CRC32();
+					String line;
+					while ((line = reader.readLine()) != null) {
+						String[] fields = line.trim().split(" ");
+						if (fields.length != 3 || Integer.parseInt(fields[0]) != track.getFirstSector()+sectors) {
+							break;
+						}
+						int count = Integer.parseInt(fields[1]);
+						int length = count*CDDAParanoia.cddaFrameSize;
+						if (buffer == null || buffer.capacity() < length) {
+							buffer = ByteBuffer.allocate(length);
+						}
+						buffer.clear();
+						buffer.limit(length);
+						long position = dataOffset + (long) sectors*CDDAParanoia.cddaFrameSize;
+						while (buffer.hasRemaining() && output.read(buffer, position + buffer.position()) > 0) {
+						}
+						if (buffer.hasRemaining()) {
+							break;
+						}
+						crc.reset();
+						crc.update(buffer.array(), 0, length);
+						if (crc.getValue() != Long.parseLong(fields[2], 16)) {
+							break;
+						}
+						verified.append(line.trim()).append('\n');
+						sectors += count;
+					}
+				}
+			} catch (NumberFormatException e) {
+				// a partially written line ends the verified ranges
+			} finally {
+				reader.close();
+			}
+		}
+		write(verified.toString(), false);
+		return sectors;
+	}
+	
+	/**
+	 * Records a range of sectors that has been written to the output.
+	 * @param sector - the first sector of the range.
+	 * @param count - the number of sectors in the range.
+	 * @param crc - the CRC32 of the range's data.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	public void record(int sector, int count, long crc) throws IOException {
+		write(sector+" "+count+" "+Long.toHexString(crc)+"\n", true);
+	}
+	
+	/**
+	 * Deletes the journal once the rip is complete.
+	 */
+	public void delete() {
+		file.delete();
+	}
+	
+	private static String header(TOCEntry track) {
+		return "track "+track.getId()+" "+track.getFirstSector()+" "+track.getSectors()+"\n";
+	}
+	
+	private void write(String s, boolean append) throws IOException {
+		OutputStream out = new FileOutputStream(file, append);
+		try {
+			out.write(s.getBytes("US-ASCII"));
+		} finally {
+			out.close();
+		}
+	}
+}
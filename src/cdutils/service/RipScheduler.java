@@ -0,0 +1,327 @@
+package cdutils.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import cdutils.domain.TOCEntry;
+import cdutils.exception.DiscReadException;
+import ollie.utils.logging.LogProvider;
+
+/**
+ * <p>
+ * Runs rip jobs across a number of drives in a single process. Each drive is serviced by 
+ * its own worker thread, which takes jobs from a shared bounded queue. Submitting a job 
+ * blocks while the queue is full, so producers are held back when the drives cannot keep up.
+ * Aggregate throughput across all of the drives is available while the scheduler runs.
+ * <p>
+ * A job has no affinity to a drive, it rips whatever disc is in the drive of the first worker
+ * free to take it. This suits drives fed by an autoloader, or by an operator loading the next
+ * disc into whichever drive has finished. To rip a particular disc, give each drive its own 
+ * scheduler and submit the job to the scheduler for the drive holding the disc. The drive
+ * that ripped a job is recorded on the job.
+ * <p>
+ * Any {@link CD} implementation may be used as a drive, so simulated drives can be used to
+ * exercise the scheduler without hardware.
+ * 
+ * @author ollie
+ *
+ */
+@LogProvider
+public class RipScheduler {
+
+	/** The number of bytes of audio per second of CD playback. */
+	public static final int BYTES_PER_SECOND = 176400;
+	private static final long POLL_MILLIS = 250;
+	
+	private final Log logger;
+	private final List<CD> drives;
+	private final BlockingQueue<RipJob> queue;
+	private final List<Thread> workers;
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicInteger liveWorkers = new AtomicInteger();
+	private volatile boolean running;
+	private volatile boolean accepting;
+	private volatile long startTime;
+	
+	/**
+	 * Creates a new scheduler for the given drives.
+	 * @param drives - the drives to rip with, each is used by a single worker thread.
+	 * @param queueCapacity - the maximum number of jobs waiting for a drive.
+	 */
+	public RipScheduler(List<? extends CD> drives, int queueCapacity) {
+		if (drives.isEmpty()) {
+			throw new IllegalArgumentException("At least one drive is required");
+		}
+		this.drives = new ArrayList<CD>(drives);
+		queue = new ArrayBlockingQueue<RipJob>(queueCapacity);
+		workers = new ArrayList<Thread>();
+		logger = LogFactory.getLog(getClass());
+	}
+	
+	/**
+	 * Starts a worker thread for each drive.
+	 */
+	public synchronized void start() {
+		if (running) {
+			throw new IllegalStateException("Scheduler already started");
+		}
+		running = true;
+		accepting = true;
+		startTime = System.currentTimeMillis();
+		liveWorkers.set(drives.size());
+		for (int i = 0; i < drives.size(); i++) {
+			Thread worker = new Thread(new Worker(drives.get(i)), "rip-worker-"+i);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+		logger.info("Started rip scheduler with ["+drives.size()+"] drives");
+	}
+	
+	/**
+	 * Submits a job, waiting for space in the queue if it is full.
+	 * @param job - the job to run.
+	 * @throws InterruptedException if interrupted while waiting for space.
+	 * @throws IllegalStateException if the scheduler is not accepting jobs or has no workers left.
+	 */
+	public void submit(RipJob job) throws InterruptedException {
+		checkAccepting();
+		queue.put(job);
+		checkQueued(job);
+	}
+	
+	/**
+	 * Submits a job, waiting at most the given time for space in the queue.
+	 * @param job - the job to run.
+	 * @return True if the job was queued, false if the queue remained full.
+	 * @throws InterruptedException if interrupted while waiting for space.
+	 * @throws IllegalStateException if the scheduler is not accepting jobs or has no workers left.
+	 */
+	public boolean submit(RipJob job, long timeout, TimeUnit unit) throws InterruptedException {
+		checkAccepting();
+		if (!queue.offer(job, timeout, unit)) {
+			return false;
+		}
+		checkQueued(job);
+		return true;
+	}
+	
+	private void checkAccepting() {
+		if (!accepting || liveWorkers.get() == 0) {
+			throw new IllegalStateException("Scheduler is not accepting jobs");
+		}
+	}
+	
+	/**
+	 * Takes back a job queued while the scheduler was shutting down or its last worker was 
+	 * exiting, as the workers may have exited or the queue been drained before it was added.
+	 */
+	private void checkQueued(RipJob job) {
+		if ((!accepting || liveWorkers.get() == 0) && queue.remove(job)) {
+			throw new IllegalStateException("Scheduler is not accepting jobs");
+		}
+	}
+	
+	/**
+	 * Stops accepting jobs, the workers exit once the queued jobs have been ripped.
+	 */
+	public void shutdown() {
+		accepting = false;
+	}
+	
+	/**
+	 * Stops accepting jobs, discards queued jobs and cancels the rips in progress. The 
+	 * discarded jobs are finished with an error, so anything waiting for them is released.
+	 * @return The jobs that were discarded.
+	 */
+	public List<RipJob> shutdownNow() {
+		accepting = false;
+		running = false;
+		List<RipJob> pending = new ArrayList<RipJob>();
+		queue.drainTo(pending);
+		for (RipJob job : pending) {
+			discard(job);
+		}
+		for (CD drive : drives) {
+			drive.cancel();
+		}
+		return pending;
+	}
+	
+	private static void discard(RipJob job) {
+		job.finished(0, 0, new DiscReadException("Rip cancelled."));
+	}
+	
+	/**
+	 * Counts a worker out, discarding the queued jobs once no worker is left to take them.
+	 */
+	private void workerExited() {
+		int left = liveWorkers.decrementAndGet();
+		if (accepting) {
+			logger.warn("["+Thread.currentThread().getName()+"] exited, ["+left+"] workers left");
+		}
+		if (left == 0) {
+			List<RipJob> pending = new ArrayList<RipJob>();
+			queue.drainTo(pending);
+			for (RipJob job : pending) {
+				discard(job);
+			}
+		}
+	}
+	
+	/**
+	 * Waits for the workers to exit after a shutdown.
+	 * @return True if all of the workers exited.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		for (Thread worker : workers) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				return false;
+			}
+			worker.join(wait);
+			if (worker.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	public int getDriveCount() {
+		return drives.size();
+	}
+	
+	public int getQueuedJobs() {
+		return queue.size();
+	}
+	
+	public long getCompletedJobs() {
+		return completed.get();
+	}
+	
+	public long getFailedJobs() {
+		return failed.get();
+	}
+	
+	/**
+	 * Gets the total number of bytes of audio ripped by all drives.
+	 * @return The number of bytes ripped.
+	 */
+	public long getBytesRipped() {
+		return bytes.get();
+	}
+	
+	/**
+	 * Gets the aggregate throughput of all drives since the scheduler was started.
+	 * @return The throughput in bytes per second.
+	 */
+	public double getThroughput() {
+		long elapsed = System.currentTimeMillis() - startTime;
+		return startTime == 0 || elapsed <= 0 ? 0 : (bytes.get()*1000.0)/elapsed;
+	}
+	
+	/**
+	 * Gets the aggregate throughput as a multiple of CD playback speed.
+	 * @return The throughput speed factor.
+	 */
+	public double getSpeedFactor() {
+		return getThroughput()/BYTES_PER_SECOND;
+	}
+	
+	/**
+	 * Takes jobs from the queue and rips them with a single drive.
+	 */
+	private class Worker implements Runnable {
+		
+		private final CD drive;
+		
+		Worker(CD drive) {
+			this.drive = drive;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (running && (accepting || !queue.isEmpty())) {
+					RipJob job = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					if (job != null && running) {
+						rip(job);
+					} else if (job != null) {
+						// taken just as the scheduler was shut down
+						discard(job);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				workerExited();
+			}
+		}
+		
+		private void rip(RipJob job) {
+			job.started(drive);
+			CountingSink sink = new CountingSink(job.getSink());
+			long start = System.currentTimeMillis();
+			Exception error = null;
+			try {
+				drive.ripDisc(sink, job.getListener());
+				completed.incrementAndGet();
+			} catch (DiscReadException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				error = e;
+			} catch (Throwable t) {
+				// an error from the drive or the job's sink fails the job, not the worker
+				error = new DiscReadException(t);
+			}
+			if (error != null) {
+				failed.incrementAndGet();
+				logger.error("Rip job failed on ["+Thread.currentThread().getName()+"]", error);
+			}
+			job.finished(sink.count, System.currentTimeMillis() - start, error);
+		}
+	}
+	
+	/**
+	 * Passes data through to a job's sink, counting the bytes written.
+	 */
+	private class CountingSink implements TrackSink {
+		
+		private final TrackSink sink;
+		private long count;
+		
+		CountingSink(TrackSink sink) {
+			this.sink = sink;
+		}
+		
+		@Override
+		public void startTrack(TOCEntry track) throws IOException {
+			sink.startTrack(track);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			sink.write(data, offset, length);
+			count += length;
+			bytes.addAndGet(length);
+		}
+
+		@Override
+		public void endTrack(TOCEntry track) throws IOException {
+			sink.endTrack(track);
+		}
+	}
+}
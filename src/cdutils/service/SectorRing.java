@@ -0,0 +1,187 @@
+package cdutils.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import cdutils.dao.CDDAParanoia;
+
+/**
+ * <p>
+ * A lock free ring of audio sectors passed from a single producer thread reading the disc
+ * to a single consumer thread. The producer reads straight into the ring through
+ * {@link #acquire(int)} and publishes the sectors with {@link #commit(int)}, the consumer
+ * copies them out with {@link #read(byte[], int, int)}. Each side only ever advances its 
+ * own counter, and parks when the ring is full or empty until the other side wakes it.
+ * <p>
+ * The capacity is a whole number of sectors and the producer only commits whole sectors, 
+ * but the consumer frees space in whatever amounts it reads. The producer waits until a 
+ * whole sector is free, and is only ever handed space for whole sectors.
+ * <p>
+ * The last sector of the data is held back until the producer has ended, so a consumer that
+ * has read to the end knows the producer has finished with whatever it was reading from.
+ * 
+ * @author ollie
+ *
+ */
+class SectorRing {
+
+	private static final long PARK_NANOS = 10000000L;
+	private final byte[] ring;
+	private final long lastSector;
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong read = new AtomicLong();
+	private volatile Thread producer;
+	private volatile Thread consumer;
+	private volatile boolean ended;
+	private volatile boolean cancelled;
+	private volatile Exception error;
+	
+	/**
+	 * Creates a ring holding the given number of sectors.
+	 * @param sectors - the capacity of the ring in sectors.
+	 * @param length - the length of the data in bytes.
+	 */
+	SectorRing(int sectors, long length) {
+		ring = new byte[Math.max(1, sectors)*CDDAParanoia.cddaFrameSize];
+		lastSector = Math.max(0, length - CDDAParanoia.cddaFrameSize);
+	}
+	
+	/**
+	 * Waits until at least one whole sector is free and returns a buffer over the whole sectors
+	 * free after the last committed sector, up to the end of the ring. Called by the producer only.
+	 * @param maxSectors - the most sectors the producer wants to write.
+	 * @return A buffer to read sectors into, or null if the consumer has gone away.
+	 */
+	ByteBuffer acquire(int maxSectors) {
+		long w = written.get();
+		int offset = (int) (w % ring.length);
+		int free;
+		while ((free = freeSectorBytes(w, offset)) == 0 && !cancelled) {
+			producer = Thread.currentThread();
+			if (!cancelled && freeSectorBytes(w, offset) == 0) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			producer = null;
+		}
+		if (cancelled) {
+			return null;
+		}
+		return ByteBuffer.wrap(ring, offset, Math.min(free, maxSectors*CDDAParanoia.cddaFrameSize));
+	}
+	
+	/**
+	 * Gets the free space following the given write position, up to the end of the ring, 
+	 * rounded down to whole sectors. The consumer frees space a byte at a time, so the free 
+	 * space can be less than a sector even though the ring is not full.
+	 */
+	private int freeSectorBytes(long w, int offset) {
+		int free = (int) Math.min(ring.length - (w - read.get()), ring.length - offset);
+		return free - free % CDDAParanoia.cddaFrameSize;
+	}
+	
+	/**
+	 * Publishes data the producer has written into the buffer returned by {@link #acquire(int)}.
+	 * @param bytes - the number of bytes written.
+	 */
+	void commit(int bytes) {
+		written.set(written.get() + bytes);
+		wake(consumer);
+	}
+	
+	/**
+	 * Marks the end of the data, the consumer reads what is left then sees end of stream.
+	 * @param e - the error that stopped the producer, or null if all of the data was written.
+	 */
+	void end(Exception e) {
+		error = e;
+		ended = true;
+		wake(consumer);
+	}
+	
+	/**
+	 * Copies data out of the ring, waiting for the producer if the ring is empty. Called by
+	 * the consumer only.
+	 * @return The number of bytes read, or -1 at the end of the data.
+	 * @throws IOException if the producer failed.
+	 */
+	int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		long r = read.get();
+		long available;
+		while ((available = readable() - r) == 0 && !ended) {
+			consumer = Thread.currentThread();
+			if (readable() == r && !ended) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			consumer = null;
+		}
+		if (available == 0) {
+			available = written.get() - r;
+			if (available == 0) {
+				if (error != null) {
+					throw new IOException("Cannot read disc: "+error.getMessage(), error);
+				}
+				return -1;
+			}
+		}
+		int offset = (int) (r % ring.length);
+		int length = (int) Math.min(Math.min(len, available), ring.length - offset);
+		System.arraycopy(ring, offset, b, off, length);
+		read.set(r + length);
+		wake(producer);
+		return length;
+	}
+	
+	/**
+	 * Gets the position up to which the consumer can read, which stops short of the last 
+	 * sector until the producer has ended.
+	 */
+	private long readable() {
+		return ended ? written.get() : Math.min(written.get(), lastSector);
+	}
+	
+	/**
+	 * Waits for the producer to end. Called by the consumer only.
+	 */
+	void awaitEnd() {
+		while (!ended) {
+			consumer = Thread.currentThread();
+			if (!ended) {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+			consumer = null;
+		}
+	}
+	
+	/**
+	 * Gets the capacity of the ring in bytes.
+	 */
+	int capacity() {
+		return ring.length;
+	}
+	
+	/**
+	 * Gets the number of bytes that can be read without waiting.
+	 */
+	int available() {
+		return (int) (readable() - read.get());
+	}
+	
+	/**
+	 * Stops the producer, called when the consumer no longer wants the data.
+	 */
+	void cancel() {
+		cancelled = true;
+		wake(producer);
+	}
+	
+	private static void wake(Thread thread) {
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+}
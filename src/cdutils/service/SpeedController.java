@@ -0,0 +1,112 @@
+package cdutils.service;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import cdutils.dao.CDDAParanoia;
+import ollie.utils.logging.LogProvider;
+
+/**
+ * <p>
+ * Adapts the read speed of a drive to the condition of the disc. Reading starts at the
+ * drive's full speed, and steps down a speed whenever the paranoia library reports too many
+ * read errors or skips within a window of sectors, so a damaged disc is not thrashed through 
+ * retries at high speed. After a run of clean windows the speed steps back
+ * up, so a disc with a few bad patches is not read slowly from then on.
+ * <p>
+ * The controller relies on the paranoia statistics, which must be enabled while it is in use.
+ * Raw reads report no statistics, so it is not used in the {@code RAW} read mode. Escalations
+ * in the {@code AUTO} read mode are not counted, since each one is caused by a raw read error 
+ * that is already counted. It is only called by the thread reading the drive.
+ *
+ * @author ollie
+ *
+ */
+@LogProvider
+class SpeedController {
+
+	/** The speeds stepped through, -1 is the drive's full speed. */
+	static final int[] SPEEDS = {-1, 32, 24, 16, 8, 4};
+	/** The number of sectors in each window, 10 seconds of audio. */
+	private static final int WINDOW_SECTORS = 750;
+	/** The number of errors within a window that steps the speed down. */
+	private static final int STEP_DOWN_ERRORS = 8;
+	/** The number of consecutive windows without errors that steps the speed up. */
+	private static final int STEP_UP_WINDOWS = 4;
+	private final CDDAParanoia paranoia;
+	private final Log logger;
+	private int level;
+	private int windowSectors;
+	private long windowErrors;
+	private int cleanWindows;
+
+	/**
+	 * Creates a controller for the drive read through the given wrapper.
+	 * @param paranoia - the wrapper used to read the drive.
+	 */
+	SpeedController(CDDAParanoia paranoia) {
+		this.paranoia = paranoia;
+		logger = LogFactory.getLog(getClass());
+	}
+
+	/**
+	 * Sets the drive to full speed, called each time the drive is opened.
+	 */
+	void start() {
+		level = 0;
+		cleanWindows = 0;
+		newWindow();
+		apply();
+	}
+
+	/**
+	 * Accounts for sectors read from the drive, changing the speed if the errors seen since
+	 * the start of the window call for it.
+	 * @param sectors - the number of sectors read.
+	 */
+	void update(int sectors) {
+		windowSectors += sectors;
+		long errors = errors() - windowErrors;
+		if (errors >= STEP_DOWN_ERRORS) {
+			cleanWindows = 0;
+			if (level < SPEEDS.length-1) {
+				level++;
+				logger.info("["+errors+"] errors in ["+windowSectors+"] sectors, slowing down");
+				apply();
+			}
+			newWindow();
+		} else if (windowSectors >= WINDOW_SECTORS) {
+			cleanWindows = errors == 0 ? cleanWindows+1 : 0;
+			if (cleanWindows >= STEP_UP_WINDOWS && level > 0) {
+				cleanWindows = 0;
+				level--;
+				logger.info("No errors in ["+STEP_UP_WINDOWS*WINDOW_SECTORS+"] sectors, speeding up");
+				apply();
+			}
+			newWindow();
+		}
+	}
+
+	/**
+	 * Gets the speed the drive has been set to.
+	 * @return The speed, -1 for full speed.
+	 */
+	int getSpeed() {
+		return SPEEDS[level];
+	}
+
+	private void newWindow() {
+		windowSectors = 0;
+		windowErrors = errors();
+	}
+
+	private long errors() {
+		return paranoia.getReadErrors() + paranoia.getSkips();
+	}
+
+	private void apply() {
+		if (!paranoia.setSpeed(SPEEDS[level])) {
+			logger.warn("Drive did not accept speed ["+SPEEDS[level]+"]");
+		}
+	}
+}
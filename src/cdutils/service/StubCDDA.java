@@ -3,10 +3,15 @@ package cdutils.service;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
+import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
+import cdutils.domain.DiscInfo;
+import cdutils.domain.ReadMode;
 import cdutils.domain.RipProgressEvent;
 import cdutils.domain.TOC;
 import cdutils.domain.TOCEntry;
@@ -68,6 +73,15 @@ public class StubCDDA implements CD {
 		return "http://mm.musicbrainz.org/ws/1/release?type=xml&discid=pbEMghtm0TEFxJq3ZS345qjIiBk-&toc=1+10+167050+150+15345+27050+44940+61170+79155+101660+115450+131945+148855";
 	}
 
+	@Override
+	public DiscInfo getDiscInfo() throws DiscReadException {
+		DiscInfo info = new DiscInfo();
+		info.setMusicBrainzDiscId(getMusicBrainzDiscId());
+		info.setFreeDbId(getCDDBId());
+		info.setWebServiceURL(getMusicBrainzURL());
+		return info;
+	}
+
 	@Override
 	public boolean isDiscInDrive() {
 		return discInDrive;
@@ -105,15 +119,60 @@ public class StubCDDA implements CD {
 		AudioInputStream ais = getTrack(track, listener);
 		byte[] bout = new byte[1024];
 		try {
-			while (ais.read(bout) > 0) {
+			int read;
+			while ((read = ais.read(bout)) > 0) {
 				checkDisc();
-				output.write(bout);
+				output.write(bout, 0, read);
 			}
 		} catch (IOException e) {
 			throw new DiscReadException(e);
 		}
 	}
 
+	@Override
+	public void getTrack(int track, RipProgressListener listener, WritableByteChannel output) throws DiscReadException {
+		getTrack(track, listener, Channels.newOutputStream(output));
+	}
+
+	@Override
+	public void ripDisc(TrackSink sink, RipProgressListener listener) throws DiscReadException {
+		TOC toc = getTableOfContents();
+		byte[] bout = new byte[1024];
+		try {
+			for (TOCEntry ent : toc.entries()) {
+				AudioInputStream ais = getTrack(ent.getId(), listener);
+				sink.startTrack(ent);
+				int read;
+				while ((read = ais.read(bout)) > 0) {
+					checkDisc();
+					sink.write(bout, 0, read);
+				}
+				sink.endTrack(ent);
+			}
+		} catch (IOException e) {
+			throw new DiscReadException(e);
+		}
+	}
+
+	@Override
+	public void ripImage(File image, File cue, RipProgressListener listener) throws DiscReadException {
+		ImageRipper.rip(this, image, cue, listener);
+	}
+
+	@Override
+	public void ripTrack(int track, File output, RipProgressListener listener) throws DiscReadException {
+		try {
+			AudioSystem.write(getTrack(track, listener), AudioFileFormat.Type.WAVE, output);
+		} catch (IOException e) {
+			throw new DiscReadException(e);
+		}
+	}
+
+	@Override
+	public AccurateRipChecksum getAccurateRipChecksum(int track) {
+		return null;
+	}
+
 	@Override
 	public void cancel() {
 		tocwait = 0;
@@ -131,6 +190,11 @@ public class StubCDDA implements CD {
 		
 	}
 
+	@Override
+	public void setReadMode(ReadMode readMode) {
+		
+	}
+
 	@Override
 	public String getLibraryVersions() {
 		return null;
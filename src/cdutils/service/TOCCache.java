@@ -0,0 +1,111 @@
+package cdutils.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import cdutils.domain.DiscInfo;
+import cdutils.domain.TOC;
+
+/**
+ * <p>
+ * Holds the last table of contents and disc information read from each device so that it can be served without
+ * reading the disc again. An entry must be invalidated whenever the media in its device 
+ * changes. The cache is shared by all {@code CD} objects in the process, entries are keyed
+ * by device locator.
+ * 
+ * @author ollie
+ *
+ */
+public class TOCCache {
+
+	private static final TOCCache instance = new TOCCache();
+	private final ConcurrentMap<String, TOC> entries = new ConcurrentHashMap<String, TOC>();
+	private final ConcurrentMap<String, DiscInfo> discInfos = new ConcurrentHashMap<String, DiscInfo>();
+	private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<String, Long>();
+	
+	/**
+	 * Gets the cache shared by all {@code CD} objects.
+	 * @return The shared cache.
+	 */
+	public static TOCCache getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Checks the cached entries for the given device against the device's current media 
+	 * generation, invalidating them if the media has changed since they were cached.
+	 * @param device - the device locator.
+	 * @param generation - the media generation of the device.
+	 * @return True if the media is unchanged and cached entries can be used.
+	 */
+	public boolean validate(String device, long generation) {
+		if (device == null) {
+			return false;
+		}
+		Long previous = generations.put(device, generation);
+		if (previous == null || previous != generation) {
+			invalidate(device);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Gets the cached table of contents for the given device.
+	 * @param device - the device locator.
+	 * @return The table of contents, or null if none is cached.
+	 */
+	public TOC get(String device) {
+		return device == null ? null : entries.get(device);
+	}
+	
+	/**
+	 * Caches the table of contents for the given device.
+	 * @param device - the device locator, nothing is cached if this is null.
+	 * @param toc - the table of contents.
+	 */
+	public void put(String device, TOC toc) {
+		if (device != null) {
+			entries.put(device, toc);
+		}
+	}
+	
+	/**
+	 * Gets the cached disc information for the given device.
+	 * @param device - the device locator.
+	 * @return The disc information, or null if none is cached.
+	 */
+	public DiscInfo getDiscInfo(String device) {
+		return device == null ? null : discInfos.get(device);
+	}
+	
+	/**
+	 * Caches the disc information for the given device.
+	 * @param device - the device locator, nothing is cached if this is null.
+	 * @param info - the disc information.
+	 */
+	public void putDiscInfo(String device, DiscInfo info) {
+		if (device != null) {
+			discInfos.put(device, info);
+		}
+	}
+	
+	/**
+	 * Removes the cached table of contents and disc information for the given device.
+	 * @param device - the device locator.
+	 */
+	public void invalidate(String device) {
+		if (device != null) {
+			entries.remove(device);
+			discInfos.remove(device);
+		}
+	}
+	
+	/**
+	 * Removes all cached entries.
+	 */
+	public void clear() {
+		entries.clear();
+		discInfos.clear();
+	}
+}
@@ -0,0 +1,41 @@
+package cdutils.service;
+
+import java.io.IOException;
+
+import cdutils.domain.TOCEntry;
+
+/**
+ * <p>
+ * Instances of classes that implement the {@code TrackSink} interface receive the audio 
+ * data of each track when ripping a whole disc. The tracks are passed to the sink in disc
+ * order, each track's data is bracketed by calls to {@link #startTrack(TOCEntry)} and 
+ * {@link #endTrack(TOCEntry)}.
+ * 
+ * @author ollie
+ *
+ */
+public interface TrackSink {
+
+	/**
+	 * Indicates that the data for the given track is about to be written.
+	 * @param track - the table of contents entry for the track.
+	 * @throws IOException if the sink cannot accept the track.
+	 */
+	public void startTrack(TOCEntry track) throws IOException;
+	
+	/**
+	 * Writes audio data for the current track.
+	 * @param data - the buffer holding the data.
+	 * @param offset - the offset of the data in the buffer.
+	 * @param length - the number of bytes to write.
+	 * @throws IOException if the data cannot be written.
+	 */
+	public void write(byte[] data, int offset, int length) throws IOException;
+	
+	/**
+	 * Indicates that all of the data for the given track has been written.
+	 * @param track - the table of contents entry for the track.
+	 * @throws IOException if the track cannot be completed.
+	 */
+	public void endTrack(TOCEntry track) throws IOException;
+}
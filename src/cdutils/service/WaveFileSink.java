@@ -0,0 +1,231 @@
+package cdutils.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.domain.TOC;
+import cdutils.domain.TOCEntry;
+
+/**
+ * <p>
+ * A {@code TrackSink} that writes wave files. Because the length of each track is known 
+ * from the table of contents, the header is written up front, so it never needs patching.
+ * The file is set to its final length before any audio arrives, which drops anything left
+ * from an earlier file of the same name. On most file systems that only makes a sparse file,
+ * so the sink then preallocates the file by writing zeros over the audio's space in large 
+ * blocks. The file system allocates the whole file at once rather than as the audio trickles
+ * in from the drive, which keeps files ripped side by side from many drives from being 
+ * fragmented, at the cost of writing each file twice. Audio is gathered in a direct buffer 
+ * and written to the file's channel a block of sectors at a time.
+ * <p>
+ * The sink either writes each track to its own file in a directory, or the whole disc to 
+ * a single file, which is given a Wave64 header if it is over 4 GB. A whole disc file can 
+ * also be written as raw sectors with no header at all.
+ * 
+ * @author ollie
+ *
+ */
+public class WaveFileSink implements TrackSink {
+
+	private static final int BUFFER_SECTORS = 64;
+	private static final int PREALLOCATE_BYTES = 1024*1024;
+	private final File directory;
+	private final File discFile;
+	private final long discLength;
+	private final boolean header;
+	private final boolean w64;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SECTORS*CDDAParanoia.cddaFrameSize);
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long position;
+	private long end;
+	private boolean preallocate = true;
+	private ByteBuffer zeros;
+	
+	/**
+	 * Constructs a sink that writes each track to {@code trackNN.wav} in the given directory.
+	 * @param directory - the directory to write the tracks to.
+	 */
+	public WaveFileSink(File directory) {
+		this.directory = directory;
+		discFile = null;
+		discLength = 0;
+		header = true;
+		w64 = false;
+	}
+	
+	/**
+	 * Constructs a sink that writes every track of the given table of contents, in order, 
+	 * to a single file.
+	 * @param file - the file to write the disc to.
+	 * @param toc - the table of contents of the disc.
+	 */
+	public WaveFileSink(File file, TOC toc) {
+		this(file, toc, true);
+	}
+	
+	/**
+	 * Constructs a sink that writes every track of the given table of contents, in order, 
+	 * to a single file.
+	 * @param file - the file to write the disc to.
+	 * @param toc - the table of contents of the disc.
+	 * @param header - true to write a wave file, false to write raw sectors.
+	 */
+	public WaveFileSink(File file, TOC toc, boolean header) {
+		this(file, toc, header, false);
+	}
+	
+	/**
+	 * Constructs a sink that writes every track of the given table of contents, in order, 
+	 * to a single file.
+	 * @param file - the file to write the disc to.
+	 * @param toc - the table of contents of the disc.
+	 * @param header - true to write a wave file, false to write raw sectors.
+	 * @param w64 - true to give a wave file a Wave64 header whatever its length.
+	 */
+	public WaveFileSink(File file, TOC toc, boolean header, boolean w64) {
+		this.header = header;
+		this.w64 = w64;
+		directory = null;
+		discFile = file;
+		long sectors = 0;
+		for (TOCEntry ent : toc.entries()) {
+			sectors += ent.getSectors();
+		}
+		discLength = sectors*CDDAParanoia.cddaFrameSize;
+	}
+	
+	/**
+	 * Gets the file that a track is written to by a sink writing to the given directory.
+	 * @param directory - the directory.
+	 * @param track - the track id.
+	 * @return The track's file.
+	 */
+	public static File getTrackFile(File directory, int track) {
+		return new File(directory, String.format("track%02d.wav", track));
+	}
+	
+	/**
+	 * Sets whether each file's space is allocated by writing zeros over it before the audio 
+	 * is written, true by default. Without preallocation the file is left sparse, and is 
+	 * only written once.
+	 * @param preallocate - false to leave the files sparse.
+	 */
+	public void setPreallocate(boolean preallocate) {
+		this.preallocate = preallocate;
+	}
+	
+	/* (non-Javadoc)
+	 * @see cdutils.service.TrackSink#startTrack(cdutils.domain.TOCEntry)
+	 */
+	@Override
+	public void startTrack(TOCEntry track) throws IOException {
+		if (discFile == null) {
+			open(getTrackFile(directory, track.getId()), (long) track.getSectors()*CDDAParanoia.cddaFrameSize);
+		} else if (file == null) {
+			open(discFile, discLength);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.TrackSink#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+		if (position + buffer.position() + length > end) {
+			throw new IOException("More audio than the table of contents allows");
+		}
+		while (length > 0) {
+			int count = Math.min(length, buffer.remaining());
+			buffer.put(data, offset, count);
+			offset += count;
+			length -= count;
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see cdutils.service.TrackSink#endTrack(cdutils.domain.TOCEntry)
+	 */
+	@Override
+	public void endTrack(TOCEntry track) throws IOException {
+		flush();
+		if (discFile == null || position == end) {
+			try {
+				if (position != end) {
+					throw new IOException("Track ["+track.getId()+"] ended ["+(end - position)+"] bytes early");
+				}
+			} finally {
+				close();
+			}
+		}
+	}
+	
+	/**
+	 * Closes the current file, for use when a rip fails part way through.
+	 * @throws IOException if the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		buffer.clear();
+		if (file != null) {
+			try {
+				file.close();
+			} finally {
+				file = null;
+				channel = null;
+			}
+		}
+	}
+	
+	private void open(File output, long dataLength) throws IOException {
+		close();
+		file = new RandomAccessFile(output, "rw");
+		channel = file.getChannel();
+		ByteBuffer wave;
+		if (!header) {
+			wave = ByteBuffer.allocate(0);
+		} else {
+			wave = w64 ? WaveHeader.w64(dataLength) : WaveHeader.header(dataLength);
+		}
+		position = wave.remaining();
+		end = position + dataLength;
+		file.setLength(end);
+		long p = 0;
+		while (wave.hasRemaining()) {
+			p += channel.write(wave, p);
+		}
+		if (preallocate) {
+			preallocate(p);
+		}
+	}
+	
+	/**
+	 * Writes zeros from the given position to the end of the file.
+	 */
+	private void preallocate(long from) throws IOException {
+		if (zeros == null) {
+			zeros = ByteBuffer.allocateDirect(PREALLOCATE_BYTES);
+		}
+		while (from < end) {
+			zeros.clear();
+			zeros.limit((int) Math.min(zeros.capacity(), end - from));
+			while (zeros.hasRemaining()) {
+				from += channel.write(zeros, from);
+			}
+		}
+	}
+	
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+}
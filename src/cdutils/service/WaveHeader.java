@@ -0,0 +1,207 @@
+package cdutils.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Builds the headers of wave files holding CD audio. Since the length of a track is known 
+ * from the table of contents before it is ripped, the header can be written up front. 
+ * Audio too long for a RIFF file, such as a whole disc image over 4 GB, is given a Sony 
+ * Wave64 header instead. The headers of existing files are read to find their audio.
+ * 
+ * @author ollie
+ *
+ */
+public final class WaveHeader {
+
+	/** The length of a RIFF wave header in bytes. */
+	public static final int RIFF_LENGTH = 44;
+	/** The length of a Wave64 header in bytes. */
+	public static final int W64_LENGTH = 104;
+	private static final long RIFF_MAX_DATA = 0xffffffffL - (RIFF_LENGTH - 8);
+	private static final int CHANNELS = 2;
+	private static final int SAMPLE_RATE = 44100;
+	private static final int BITS_PER_SAMPLE = 16;
+	private static final int BLOCK_ALIGN = CHANNELS*BITS_PER_SAMPLE/8;
+	private static final int PCM = 1;
+	private static final byte[] W64_GUID_SUFFIX = {
+		(byte) 0xf3, (byte) 0xac, (byte) 0xd3, 0x11, (byte) 0x8c, (byte) 0xd1, 0x00, (byte) 0xc0, 
+		0x4f, (byte) 0x8e, (byte) 0xdb, (byte) 0x8a };
+	private static final byte[] W64_RIFF_GUID_SUFFIX = {
+		0x2e, (byte) 0x91, (byte) 0xcf, 0x11, (byte) 0xa5, (byte) 0xd6, 0x28, (byte) 0xdb, 
+		0x04, (byte) 0xc1, 0x00, 0x00 };
+	
+	private WaveHeader() {
+	}
+	
+	/**
+	 * Determines whether the given amount of audio needs a Wave64 header.
+	 * @param dataLength - the number of bytes of audio data.
+	 * @return True if the data is too long for a RIFF file.
+	 */
+	public static boolean isW64(long dataLength) {
+		return dataLength > RIFF_MAX_DATA;
+	}
+	
+	/**
+	 * Gets the length of the header that {@link #header(long)} builds.
+	 * @param dataLength - the number of bytes of audio data.
+	 * @return The header length in bytes.
+	 */
+	public static int length(long dataLength) {
+		return isW64(dataLength) ? W64_LENGTH : RIFF_LENGTH;
+	}
+	
+	/**
+	 * Builds a RIFF header, or a Wave64 header if the data is too long for RIFF.
+	 * @param dataLength - the number of bytes of audio data that will follow the header.
+	 * @return A buffer holding the header, ready to be written.
+	 */
+	public static ByteBuffer header(long dataLength) {
+		return isW64(dataLength) ? w64(dataLength) : riff(dataLength);
+	}
+	
+	/**
+	 * Builds a RIFF wave header for CD audio.
+	 * @param dataLength - the number of bytes of audio data that will follow the header.
+	 * @return A buffer holding the header, ready to be written.
+	 */
+	public static ByteBuffer riff(long dataLength) {
+		if (isW64(dataLength)) {
+			throw new IllegalArgumentException("Too much data ["+dataLength+"] for a RIFF file");
+		}
+		ByteBuffer header = ByteBuffer.allocate(RIFF_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(ascii("RIFF"));
+		header.putInt((int) (RIFF_LENGTH - 8 + dataLength));
+		header.put(ascii("WAVE"));
+		header.put(ascii("fmt "));
+		header.putInt(16);
+		format(header);
+		header.put(ascii("data"));
+		header.putInt((int) dataLength);
+		header.flip();
+		return header;
+	}
+	
+	/**
+	 * Builds a Sony Wave64 header for CD audio. Chunk ids are GUIDs and sizes are 64 bit 
+	 * and include the chunk header.
+	 * @param dataLength - the number of bytes of audio data that will follow the header.
+	 * @return A buffer holding the header, ready to be written.
+	 */
+	public static ByteBuffer w64(long dataLength) {
+		ByteBuffer header = ByteBuffer.allocate(W64_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+		long padding = (8 - dataLength % 8) % 8;
+		header.put(ascii("riff")).put(W64_RIFF_GUID_SUFFIX);
+		header.putLong(W64_LENGTH + dataLength + padding);
+		header.put(ascii("wave")).put(W64_GUID_SUFFIX);
+		header.put(ascii("fmt ")).put(W64_GUID_SUFFIX);
+		header.putLong(24 + 16);
+		format(header);
+		header.put(ascii("data")).put(W64_GUID_SUFFIX);
+		header.putLong(24 + dataLength);
+		header.flip();
+		return header;
+	}
+	
+	/**
+	 * Finds the audio data in a RIFF or Wave64 file of CD audio, skipping the header and any
+	 * chunks other than the format and data chunks.
+	 * @param file - the wave file.
+	 * @return The offset and the length of the audio data in bytes.
+	 * @throws IOException if the file cannot be read, is not a wave file or does not hold CD audio.
+	 */
+	public static long[] findData(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer id = read(channel, 0, 16);
+			boolean w64 = Arrays.equals(guid("riff", W64_RIFF_GUID_SUFFIX), id.array());
+			if (w64 ? !Arrays.equals(guid("wave", W64_GUID_SUFFIX), read(channel, 24, 16).array()) 
+					: !(tag(id, 0).equals("RIFF") && tag(id, 8).equals("WAVE"))) {
+				throw new IOException("["+file+"] is not a wave file");
+			}
+			int headerLength = w64 ? 24 : 8;
+			long position = w64 ? 40 : 12;
+			boolean formatChecked = false;
+			while (position + headerLength <= channel.size()) {
+				ByteBuffer chunk = read(channel, position, headerLength);
+				String tag = tag(chunk, 0);
+				if (w64 && !Arrays.equals(guid(tag, W64_GUID_SUFFIX), Arrays.copyOf(chunk.array(), 16))) {
+					tag = "";
+				}
+				long size = w64 ? chunk.getLong(16) - headerLength : chunk.getInt(4) & 0xffffffffL;
+				long data = position + headerLength;
+				if (tag.equals("fmt ")) {
+					checkFormat(file, read(channel, data, 16));
+					formatChecked = true;
+				} else if (tag.equals("data")) {
+					if (!formatChecked) {
+						throw new IOException("["+file+"] has no format before its data");
+					}
+					return new long[] {data, Math.min(size, channel.size() - data)};
+				}
+				position = data + size + (w64 ? (8 - size % 8) % 8 : size % 2);
+			}
+			throw new IOException("["+file+"] has no data");
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static void checkFormat(File file, ByteBuffer format) throws IOException {
+		int tag = format.getShort(0) & 0xffff;
+		if ((tag != PCM && tag != 0xfffe) || format.getShort(2) != CHANNELS 
+				|| format.getInt(4) != SAMPLE_RATE || format.getShort(14) != BITS_PER_SAMPLE) {
+			throw new IOException("["+file+"] is not 16 bit stereo audio at 44.1 kHz");
+		}
+	}
+	
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of wave file");
+			}
+		}
+		return buffer;
+	}
+	
+	private static String tag(ByteBuffer buffer, int offset) {
+		char[] c = new char[4];
+		for (int i = 0; i < c.length; i++) {
+			c[i] = (char) (buffer.get(offset+i) & 0xff);
+		}
+		return new String(c);
+	}
+	
+	private static byte[] guid(String tag, byte[] suffix) {
+		byte[] guid = new byte[16];
+		System.arraycopy(ascii(tag), 0, guid, 0, 4);
+		System.arraycopy(suffix, 0, guid, 4, suffix.length);
+		return guid;
+	}
+	
+	private static void format(ByteBuffer header) {
+		header.putShort((short) PCM);
+		header.putShort((short) CHANNELS);
+		header.putInt(SAMPLE_RATE);
+		header.putInt(SAMPLE_RATE*BLOCK_ALIGN);
+		header.putShort((short) BLOCK_ALIGN);
+		header.putShort((short) BITS_PER_SAMPLE);
+	}
+	
+	private static byte[] ascii(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) s.charAt(i);
+		}
+		return b;
+	}
+}
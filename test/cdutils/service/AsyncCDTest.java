@@ -0,0 +1,86 @@
+package cdutils.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cdutils.dao.SimulatedDriveBackend;
+import cdutils.domain.RipProgressEvent;
+
+/**
+ * Tests {@link AsyncCD} against a simulated drive.
+ *
+ * @author ollie
+ *
+ */
+public class AsyncCDTest {
+
+	private static final String DEVICE = "/dev/simulated";
+
+	private SimulatedDriveBackend backend;
+	private CDDA cdda;
+	private AsyncCD async;
+
+	@Before
+	public void setUp() {
+		TOCCache.getInstance().clear();
+		backend = new SimulatedDriveBackend();
+		backend.setTracks(2, 750);
+		backend.setMaxSpeed(4);
+		cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		async = new AsyncCD(cdda);
+	}
+
+	@After
+	public void tearDown() {
+		async.shutdown();
+	}
+
+	/**
+	 * Cancels a rip while the drive is still spinning up, before the rip has opened it, and
+	 * checks the rip stops rather than running to the end of the track.
+	 */
+	@Test
+	public void cancelBeforeDriveOpened() throws Exception {
+		backend.setSpinUpMillis(500);
+		Future<Void> rip = async.getTrack(2, null, new ByteArrayOutputStream());
+		Thread.sleep(100);
+
+		long start = System.nanoTime();
+		assertTrue(rip.cancel(true));
+		// runs once the rip has left the drive's thread
+		async.getTableOfContents().get();
+
+		assertNull(cdda.getAccurateRipChecksum(2));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+	}
+
+	/**
+	 * Checks the drive's thread is named after its device.
+	 */
+	@Test
+	public void threadNamedAfterDevice() throws Exception {
+		backend.setMaxSpeed(0);
+		final String[] name = new String[1];
+		async.getTrack(1, new RipProgressListener() {
+			@Override
+			public void onRipProgressEvent(RipProgressEvent event) {
+				name[0] = Thread.currentThread().getName();
+			}
+
+			@Override
+			public void onError(String message) {
+			}
+		}, new ByteArrayOutputStream()).get();
+		assertEquals("async-cd ["+DEVICE+"]", name[0]);
+	}
+}
@@ -0,0 +1,129 @@
+package cdutils.service;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import cdutils.dao.SimulatedDriveBackend;
+
+/**
+ * Checks that reading a track from a simulated drive does not allocate for each frame read,
+ * by comparing the bytes allocated by the reading thread for a short and a long track.
+ *
+ * @author ollie
+ *
+ */
+public class CDDAAllocationTest {
+
+	private static final String DEVICE = "/dev/simulated";
+	private static final int SHORT_TRACK_SECTORS = 2000;
+	private static final int LONG_TRACK_SECTORS = 3*SHORT_TRACK_SECTORS;
+	/** Allows for allocations made once per buffer of frames rather than once per frame. */
+	private static final long MAX_BYTES_PER_FRAME = 8;
+
+	private com.sun.management.ThreadMXBean threads;
+	private SimulatedDriveBackend backend;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		TOCCache.getInstance().clear();
+		backend = new SimulatedDriveBackend();
+	}
+
+	/**
+	 * Reads to a channel, through a direct buffer.
+	 */
+	@Test
+	public void transferToChannel() throws Exception {
+		assertBytesPerFrame(new Transfer() {
+			@Override
+			public void run(CDDA cdda) throws Exception {
+				cdda.getTrack(1, null, new DiscardingChannel());
+			}
+		});
+	}
+
+	/**
+	 * Reads to a stream, through a heap buffer.
+	 */
+	@Test
+	public void transferToStream() throws Exception {
+		assertBytesPerFrame(new Transfer() {
+			@Override
+			public void run(CDDA cdda) throws Exception {
+				cdda.getTrack(1, null, new OutputStream() {
+					@Override
+					public void write(int b) {
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+					}
+				});
+			}
+		});
+	}
+
+	private void assertBytesPerFrame(Transfer transfer) throws Exception {
+		// warm up, so class loading and compilation are not measured
+		for (int i = 0; i < 5; i++) {
+			allocated(transfer, LONG_TRACK_SECTORS);
+		}
+		long shortTrack = allocated(transfer, SHORT_TRACK_SECTORS);
+		long longTrack = allocated(transfer, LONG_TRACK_SECTORS);
+		long perFrame = (longTrack - shortTrack)/(LONG_TRACK_SECTORS - SHORT_TRACK_SECTORS);
+		assertTrue("Allocated ["+perFrame+"] bytes per frame", perFrame <= MAX_BYTES_PER_FRAME);
+	}
+
+	/**
+	 * Gets the bytes allocated by this thread to read a track of the given length.
+	 */
+	private long allocated(Transfer transfer, int sectors) throws Exception {
+		backend.setTracks(2, sectors);
+		TOCCache.getInstance().clear();
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		cdda.getTableOfContents();
+		long id = Thread.currentThread().getId();
+		long start = threads.getThreadAllocatedBytes(id);
+		transfer.run(cdda);
+		return threads.getThreadAllocatedBytes(id) - start;
+	}
+
+	private interface Transfer {
+		void run(CDDA cdda) throws Exception;
+	}
+
+	/**
+	 * Consumes whatever is written without allocating.
+	 */
+	private static class DiscardingChannel implements WritableByteChannel {
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int length = src.remaining();
+			src.position(src.limit());
+			return length;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package cdutils.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.dao.SimulatedDriveBackend;
+import cdutils.exception.DiscInUseException;
+import cdutils.exception.DiscReadException;
+
+/**
+ * Tests {@link CDDA} against a simulated drive.
+ *
+ * @author ollie
+ *
+ */
+public class CDDATest {
+
+	private static final String DEVICE = "/dev/simulated";
+	private static final int TRACK_SECTORS = 2000;
+
+	private SimulatedDriveBackend backend;
+
+	@Before
+	public void setUp() {
+		TOCCache.getInstance().clear();
+		backend = new SimulatedDriveBackend();
+		backend.setTracks(3, TRACK_SECTORS);
+	}
+
+	/**
+	 * Reads a track through its stream in chunks that are not a whole number of sectors, with a
+	 * small read ahead so the ring is full and the producer waits on the consumer, and checks the
+	 * producer only reads the drive when a whole sector is free.
+	 */
+	@Test
+	public void streamReadInPartialSectors() throws Exception {
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		byte[] expected = readTrack(cdda, 2, 64*1024);
+
+		cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		cdda.setReadAheadSectors(4);
+		byte[] actual = readTrack(cdda, 2, 4096);
+
+		assertEquals(TRACK_SECTORS*CDDAParanoia.cddaFrameSize, actual.length);
+		assertArrayEquals(expected, actual);
+		// a seek, at least one sector per read and the end of the track
+		long events = cdda.getDiagnostics().getCount();
+		assertTrue("Producer spun without reading, "+events+" events", events <= TRACK_SECTORS + 2);
+	}
+
+	/**
+	 * Reads short tracks through their streams one after another, and checks each stream has
+	 * released the drive, or handed it to the next track's prefetch, by the time its caller 
+	 * has read to the end.
+	 */
+	@Test
+	public void streamTracksBackToBack() throws Exception {
+		backend.setTracks(3, 10);
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		for (int i = 0; i < 200; i++) {
+			assertEquals(10*CDDAParanoia.cddaFrameSize, readTrack(cdda, i%3 + 1, 64*1024).length);
+		}
+	}
+
+	/**
+	 * Cancels a stream whose caller has stopped reading, so its producer is waiting for space
+	 * in the ring, and checks the cancel returns and the caller sees the rip was cancelled.
+	 */
+	@Test
+	public void cancelStreamNotBeingRead() throws Exception {
+		final CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		cdda.setReadAheadSectors(8);
+		InputStream in = cdda.getTrack(1);
+		try {
+			assertEquals(100, in.read(new byte[100]));
+
+			Thread cancel = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					cdda.cancel();
+				}
+			});
+			cancel.start();
+			cancel.join(5000);
+			assertFalse("Cancel blocked on a full ring", cancel.isAlive());
+			try {
+				byte[] buffer = new byte[64*1024];
+				while (in.read(buffer) != -1) {
+					// drains the sectors read before the cancel
+				}
+				fail("Cancelled stream read to the end");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			in.close();
+		}
+		assertEquals(0, backend.getOpenHandles());
+	}
+
+	/**
+	 * Opens a second stream while the first is still reading, and checks the second fails 
+	 * without closing the drive beneath the first.
+	 */
+	@Test
+	public void getTrackWhileStreaming() throws Exception {
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		cdda.setReadAheadSectors(8);
+		InputStream in = cdda.getTrack(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			try {
+				cdda.getTrack(2);
+				fail("Opened a drive in use");
+			} catch (DiscInUseException e) {
+				// expected
+			}
+			byte[] buffer = new byte[64*1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		assertEquals(TRACK_SECTORS*CDDAParanoia.cddaFrameSize, out.size());
+	}
+
+	/**
+	 * Rips the last track of a disc whose first track is data, so the track numbers do not 
+	 * match the positions of the tracks in the table of contents.
+	 */
+	@Test
+	public void ripTrackOnMixedModeDisc() throws Exception {
+		backend.setTracks(4, 1000);
+		backend.setDataTracks(1);
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		assertEquals(3, cdda.getTableOfContents().size());
+		byte[] expected = readTrack(cdda, 4, 64*1024);
+
+		File file = File.createTempFile("track", ".wav");
+		try {
+			cdda.ripTrack(4, file, null);
+			byte[] wave = readFile(file);
+			byte[] audio = new byte[wave.length - WaveHeader.RIFF_LENGTH];
+			System.arraycopy(wave, WaveHeader.RIFF_LENGTH, audio, 0, audio.length);
+			assertArrayEquals(expected, audio);
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Transfers the last track of a mixed mode disc to a channel, through a direct buffer, and 
+	 * to a stream, through a heap buffer, and checks both give the same audio and checksums.
+	 */
+	@Test
+	public void transferTrackToChannelAndStream() throws Exception {
+		backend.setTracks(4, 1000);
+		backend.setDataTracks(1);
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		cdda.getTrack(4, null, stream);
+		AccurateRipChecksum expected = cdda.getAccurateRipChecksum(4);
+
+		ByteArrayOutputStream channel = new ByteArrayOutputStream();
+		cdda.getTrack(4, null, Channels.newChannel(channel));
+		AccurateRipChecksum actual = cdda.getAccurateRipChecksum(4);
+
+		assertEquals(1000*CDDAParanoia.cddaFrameSize, channel.size());
+		assertArrayEquals(stream.toByteArray(), channel.toByteArray());
+		assertTrue(actual.isComplete());
+		assertEquals(expected.getV1(), actual.getV1());
+		assertEquals(expected.getV2(), actual.getV2());
+	}
+
+	/**
+	 * Rips from an empty drive, which fails after the drive has been identified, and checks 
+	 * the drive is closed and can rip once a disc is loaded.
+	 */
+	@Test
+	public void ripTrackFromEmptyDrive() throws Exception {
+		CDDA cdda = new CDDA(DEVICE, backend);
+		cdda.setSpeed(-1);
+		backend.setDiscLoaded(false);
+		File file = File.createTempFile("track", ".wav");
+		try {
+			try {
+				cdda.ripTrack(1, file, null);
+				fail("Ripped from an empty drive");
+			} catch (DiscReadException e) {
+				// expected
+			}
+			assertEquals(0, backend.getOpenHandles());
+
+			backend.setDiscLoaded(true);
+			cdda.ripTrack(1, file, null);
+			assertEquals(WaveHeader.RIFF_LENGTH + TRACK_SECTORS*CDDAParanoia.cddaFrameSize, file.length());
+			assertEquals(0, backend.getOpenHandles());
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[64*1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] readTrack(CDDA cdda, int track, int chunk) throws DiscReadException, IOException {
+		InputStream in = cdda.getTrack(track);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[chunk];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,150 @@
+package cdutils.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cdutils.dao.CDDAParanoia;
+import cdutils.dao.SimulatedDriveBackend;
+import cdutils.domain.TOCEntry;
+
+/**
+ * Tests {@link ImageCD} with images ripped from a simulated drive.
+ *
+ * @author ollie
+ *
+ */
+public class ImageCDTest {
+
+	private static final int TRACK_SECTORS = 500;
+
+	private SimulatedDriveBackend backend;
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		TOCCache.getInstance().clear();
+		backend = new SimulatedDriveBackend();
+		backend.setTracks(3, TRACK_SECTORS);
+		directory = File.createTempFile("image", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Rips a disc to a wave image with a CUE sheet and reads each track back from the image.
+	 */
+	@Test
+	public void readWaveImage() throws Exception {
+		readImage("disc.wav");
+	}
+
+	/**
+	 * Rips a disc to a Wave64 image with a CUE sheet and reads each track back from the image.
+	 */
+	@Test
+	public void readRippedWave64Image() throws Exception {
+		readImage("disc.w64");
+		assertEquals(WaveHeader.W64_LENGTH, WaveHeader.findData(new File(directory, "disc.w64"))[0]);
+	}
+
+	/**
+	 * Rips a disc whose first track starts at sector 150 to an image, and checks the image 
+	 * keeps the disc's sector numbers and so its disc ids.
+	 */
+	@Test
+	public void readImageWithHiddenPregap() throws Exception {
+		backend.setFirstTrackSector(150);
+		readImage("disc.wav");
+
+		CDDA cdda = new CDDA("/dev/simulated", backend);
+		ImageCD imageCD = new ImageCD(new File(directory, "disc.cue"));
+		List<TOCEntry> expected = cdda.getTableOfContents().entries();
+		List<TOCEntry> actual = imageCD.getTableOfContents().entries();
+		assertEquals(150, actual.get(0).getFirstSector());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getFirstSector(), actual.get(i).getFirstSector());
+			assertEquals(expected.get(i).getLastSector(), actual.get(i).getLastSector());
+		}
+		assertEquals(cdda.getMusicBrainzDiscId(), imageCD.getMusicBrainzDiscId());
+		assertEquals(cdda.getCDDBId(), imageCD.getCDDBId());
+	}
+
+	/**
+	 * Checks an image is not ripped to a file whose format is not known from its extension.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void ripImageWithUnknownExtension() throws Exception {
+		CDDA cdda = new CDDA("/dev/simulated", backend);
+		cdda.ripImage(new File(directory, "disc.flac"), new File(directory, "disc.cue"), null);
+	}
+
+	private void readImage(String name) throws Exception {
+		File image = new File(directory, name);
+		File cue = new File(directory, "disc.cue");
+		CDDA cdda = new CDDA("/dev/simulated", backend);
+		cdda.setSpeed(-1);
+		cdda.ripImage(image, cue, null);
+
+		ImageCD imageCD = new ImageCD(cue);
+		assertEquals(3, imageCD.getTableOfContents().size());
+		for (int track = 1; track <= 3; track++) {
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			cdda.getTrack(track, null, expected);
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			imageCD.getTrack(track, null, actual);
+			assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		}
+	}
+
+	/**
+	 * Reads a Wave64 file named by a CUE sheet, with the data following the header.
+	 */
+	@Test
+	public void readWave64Image() throws Exception {
+		byte[] audio = new byte[TRACK_SECTORS*CDDAParanoia.cddaFrameSize];
+		for (int i = 0; i < audio.length; i++) {
+			audio[i] = (byte) i;
+		}
+		File image = new File(directory, "disc.w64");
+		OutputStream out = new FileOutputStream(image);
+		try {
+			out.write(WaveHeader.w64(audio.length).array());
+			out.write(audio);
+		} finally {
+			out.close();
+		}
+		File cue = new File(directory, "disc.cue");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(cue), "UTF-8");
+		try {
+			writer.write("FILE \"disc.w64\" WAVE\r\n  TRACK 01 AUDIO\r\n    INDEX 01 00:00:00\r\n");
+		} finally {
+			writer.close();
+		}
+
+		ImageCD imageCD = new ImageCD(cue);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		imageCD.getTrack(1, null, actual);
+		assertArrayEquals(audio, actual.toByteArray());
+	}
+}
@@ -0,0 +1,141 @@
+package cdutils.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cdutils.dao.SimulatedDriveBackend;
+import cdutils.domain.TOCEntry;
+
+/**
+ * Tests {@link RipScheduler} with simulated drives.
+ *
+ * @author ollie
+ *
+ */
+public class RipSchedulerTest {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private SimulatedDriveBackend backend;
+	private RipScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		TOCCache.getInstance().clear();
+		backend = new SimulatedDriveBackend();
+		backend.setTracks(2, 750);
+		backend.setMaxSpeed(4);
+		CDDA drive = new CDDA("/dev/simulated", backend);
+		drive.setSpeed(-1);
+		scheduler = new RipScheduler(Arrays.asList(drive), 4);
+		scheduler.start();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		scheduler.shutdownNow();
+		scheduler.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Shuts the scheduler down while one job is ripping and two are queued, and checks that
+	 * all three are finished with an error rather than left waiting.
+	 */
+	@Test
+	public void shutdownNowFinishesJobs() throws Exception {
+		DiscardingSink sink = new DiscardingSink();
+		RipJob running = new RipJob(sink, null);
+		RipJob first = new RipJob(sink, null);
+		RipJob second = new RipJob(sink, null);
+		scheduler.submit(running);
+		scheduler.submit(first);
+		scheduler.submit(second);
+		assertTrue(sink.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		List<RipJob> discarded = scheduler.shutdownNow();
+
+		assertEquals(Arrays.asList(first, second), discarded);
+		for (RipJob job : Arrays.asList(running, first, second)) {
+			assertTrue(job.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertNotNull(job.getError());
+		}
+		assertTrue(scheduler.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Checks a job is released when its rip ends with an {@link Error}, and the drive's worker
+	 * goes on to rip the next job.
+	 */
+	@Test
+	public void errorFinishesJob() throws Exception {
+		backend.setMaxSpeed(0);
+		RipJob job = new RipJob(new DiscardingSink() {
+			@Override
+			public void write(byte[] data, int offset, int length) {
+				throw new AssertionError("Sink failed");
+			}
+		}, null);
+		scheduler.submit(job);
+
+		assertTrue(job.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertNotNull(job.getError());
+		assertEquals(1, scheduler.getFailedJobs());
+
+		RipJob next = new RipJob(new DiscardingSink(), null);
+		scheduler.submit(next);
+		assertTrue(next.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertNull(next.getError());
+		assertEquals(1, scheduler.getCompletedJobs());
+	}
+
+	/**
+	 * Checks jobs cannot be submitted once the scheduler has been shut down.
+	 */
+	@Test
+	public void submitAfterShutdown() throws Exception {
+		scheduler.shutdown();
+		try {
+			scheduler.submit(new RipJob(new DiscardingSink(), null));
+			fail("Job accepted after shutdown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(0, scheduler.getQueuedJobs());
+	}
+
+	/**
+	 * Discards the audio, signalling once the first track has started.
+	 */
+	private static class DiscardingSink implements TrackSink {
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		@Override
+		public void startTrack(TOCEntry track) throws IOException {
+			started.countDown();
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			// discarded
+		}
+
+		@Override
+		public void endTrack(TOCEntry track) throws IOException {
+			// discarded
+		}
+	}
+}